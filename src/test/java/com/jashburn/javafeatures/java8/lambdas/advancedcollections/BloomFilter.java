@@ -0,0 +1,103 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set membership test that may give false positives but never false negatives: if
+ * {@link #mightContain(Object)} returns {@code false}, the element was definitely never added.
+ * <p>
+ * For {@code n} expected elements and a false positive probability {@code p}, it uses
+ * {@code m = -n ln(p) / (ln 2)^2} bits and sets {@code k = (m / n) ln 2} of them per element, e.g.,
+ * about 9.6 bits (1.2 bytes) and 7 bit positions per element for 1%. The bit positions come from
+ * the element's {@code hashCode}, spread over 64 bits and combined by double hashing.
+ * <p>
+ * Elements can be added while other threads are querying.
+ */
+class BloomFilter<T> {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+    }
+
+    static <T> BloomFilter<T> create(long expectedElements, double falsePositiveProbability) {
+        if (expectedElements <= 0) {
+            throw new IllegalArgumentException("expectedElements: " + expectedElements);
+        }
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException(
+                    "falsePositiveProbability: " + falsePositiveProbability);
+        }
+        double ln2 = Math.log(2);
+        long bitCount = (long) Math.ceil(
+                -expectedElements * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        int hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedElements * ln2));
+        return new BloomFilter<>(Math.max(64, bitCount), hashCount);
+    }
+
+    /**
+     * Sized for {@code elements} plus room for {@code headroom} (e.g., 0.5 for 50%) more to be
+     * added later.
+     */
+    static <T> BloomFilter<T> of(Collection<? extends T> elements, double headroom,
+            double falsePositiveProbability) {
+        long expected = Math.max(1, (long) Math.ceil(elements.size() * (1 + headroom)));
+        BloomFilter<T> filter = create(expected, falsePositiveProbability);
+        elements.forEach(filter::add);
+        return filter;
+    }
+
+    void add(T element) {
+        long hash1 = spread(element.hashCode());
+        long hash2 = Long.rotateLeft(hash1, 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(T element) {
+        long hash1 = spread(element.hashCode());
+        long hash2 = Long.rotateLeft(hash1, 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long bitCount() {
+        return bitCount;
+    }
+
+    int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 64-bit finaliser from MurmurHash3, so that similar hash codes (e.g., of similar strings)
+     * end up far apart.
+     */
+    private static long spread(int hashCode) {
+        long h = hashCode * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,142 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import com.jashburn.javafeatures.java8.lambdas.Artist;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterDemo {
+
+    private static List<String> artistNames(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> "Artist " + i).collect(Collectors.toList());
+    }
+
+    @Test
+    void sizedFromFalsePositiveProbability() {
+        BloomFilter<String> filter = BloomFilter.create(1_000_000, 0.01);
+
+        assertAll(() -> assertEquals(9_585_059, filter.bitCount()),
+                () -> assertEquals(7, filter.hashCount()));
+    }
+
+    @Test
+    void noFalseNegatives() {
+        List<String> known = artistNames(0, 100_000);
+        BloomFilter<String> filter = BloomFilter.of(known, 0, 0.01);
+
+        assertTrue(known.stream().allMatch(filter::mightContain));
+    }
+
+    @Test
+    void falsePositiveRateNearTarget() {
+        BloomFilter<String> filter = BloomFilter.of(artistNames(0, 100_000), 0, 0.01);
+
+        long falsePositives = artistNames(100_000, 1_100_000).stream()
+                .filter(filter::mightContain).count();
+        double rate = falsePositives / 1_000_000.0;
+        System.out.println("BloomFilter false positive rate: " + rate);
+        assertEquals(0.01, rate, 0.002);
+    }
+
+    @Test
+    void addedKeysArePassedToLookup() {
+        NegativeLookupGuard<String, Artist> guard = new NegativeLookupGuard<>(Set.of("Artist 0"),
+                0.01, name -> new Artist(name, "UK"));
+        assertNull(guard.apply("New Artist"));
+
+        guard.add("New Artist");
+        assertEquals("New Artist", guard.apply("New Artist").getName());
+    }
+
+    @Test
+    void rebuild() {
+        NegativeLookupGuard<String, Artist> guard =
+                new NegativeLookupGuard<>(artistNames(0, 10), 0.01, name -> new Artist(name, "UK"));
+        guard.rebuild(artistNames(0, 10_000));
+
+        assertAll(() -> assertTrue(artistNames(0, 10_000).stream()
+                .allMatch(name -> guard.apply(name) != null)),
+                () -> assertFalse(artistNames(10_000, 11_000).stream()
+                        .allMatch(name -> guard.apply(name) != null)));
+    }
+
+    /**
+     * Keys added while the filter is being rebuilt from a key set that does not include them are
+     * still passed to the lookup once the rebuilt filter is in place.
+     */
+    @Test
+    void keysAddedDuringRebuildAreKept() throws InterruptedException {
+        NegativeLookupGuard<String, Artist> guard =
+                new NegativeLookupGuard<>(artistNames(0, 10), 0.01, name -> new Artist(name, "UK"));
+        List<String> added = artistNames(20_000, 21_000);
+        CountDownLatch rebuildStarted = new CountDownLatch(1);
+        CountDownLatch keysAdded = new CountDownLatch(1);
+        List<String> allKeys = artistNames(0, 20_000);
+
+        // Holds the rebuild at its first key until the other thread has added its keys
+        Collection<String> slowKeys = new AbstractCollection<>() {
+            @Override
+            public Iterator<String> iterator() {
+                rebuildStarted.countDown();
+                try {
+                    keysAdded.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return allKeys.iterator();
+            }
+
+            @Override
+            public int size() {
+                return allKeys.size();
+            }
+        };
+        Thread adder = new Thread(() -> {
+            try {
+                rebuildStarted.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            added.forEach(guard::add);
+            keysAdded.countDown();
+        });
+        adder.start();
+        guard.rebuild(slowKeys);
+        adder.join();
+
+        assertAll(() -> assertTrue(added.stream().allMatch(name -> guard.apply(name) != null)),
+                () -> assertTrue(allKeys.stream().allMatch(name -> guard.apply(name) != null)));
+    }
+
+    /**
+     * Average time to answer a lookup for an unknown artist.
+     */
+    @Test
+    void negativeLookupCost() {
+        NegativeLookupGuard<String, Artist> guard = new NegativeLookupGuard<>(
+                artistNames(0, 100_000), 0.01, name -> new Artist(name, "UK"));
+        List<String> unknown = artistNames(100_000, 200_000);
+        unknown.forEach(String::hashCode); // String caches its hash code
+
+        for (int warmUp = 0; warmUp < 5; warmUp++) {
+            unknown.forEach(guard::apply);
+        }
+        long start = System.nanoTime();
+        unknown.forEach(guard::apply);
+        double nanosPerLookup = (double) (System.nanoTime() - start) / unknown.size();
+
+        System.out.println("NegativeLookupGuard: " + nanosPerLookup + " ns per unknown artist");
+        assertTrue(nanosPerLookup < 1_000, () -> nanosPerLookup + " ns");
+    }
+}
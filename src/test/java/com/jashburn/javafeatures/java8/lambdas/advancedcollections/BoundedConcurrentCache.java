@@ -0,0 +1,186 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Thread-safe, size-bounded replacement for caching with {@link java.util.Map#computeIfAbsent}
+ * on a {@code HashMap}.
+ * <ul>
+ * <li>entries live in a {@link ConcurrentHashMap}, so reads take no locks, and writes only lock
+ * the hash bin they touch</li>
+ * <li>each key is loaded at most once however many threads ask for it at the same time: the
+ * first thread loads it while holding that key's own lock, and the others wait for the result.
+ * Unlike {@link ConcurrentHashMap#computeIfAbsent}, a slow load does not block other keys that
+ * happen to share its hash bin</li>
+ * <li>as with {@code Map.computeIfAbsent}, a {@code null} value is returned but not cached</li>
+ * <li>bounded by weight: each entry is weighed once, when it is loaded, by a {@code weigher}
+ * such as an estimate of its size in bytes, which bounds the memory held by the cache. With no
+ * weigher, every entry weighs 1, so {@code maximumWeight} is a maximum number of entries</li>
+ * <li>once the entries weigh more than {@code maximumWeight}, entries are evicted in CLOCK
+ * (second chance) order: a read just sets a flag on the entry, and an entry whose flag is set
+ * when its turn for eviction comes is given another round instead. Only one thread evicts at a
+ * time; others do not wait for it</li>
+ * </ul>
+ */
+class BoundedConcurrentCache<K, V> {
+
+    private final long maximumWeight;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final AtomicLong weight = new AtomicLong();
+    private final ConcurrentHashMap<K, Node<V>> entries = new ConcurrentHashMap<>();
+    private final Queue<K> clock = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    BoundedConcurrentCache(int maximumSize) {
+        this(maximumSize, (key, value) -> 1);
+    }
+
+    BoundedConcurrentCache(long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("maximumWeight: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = Objects.requireNonNull(weigher);
+    }
+
+    V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        Objects.requireNonNull(key);
+        Node<V> node = entries.get(key);
+        if (node != null && node.loaded) {
+            node.referenced = true;
+            return node.value;
+        }
+
+        if (node == null) {
+            Node<V> newNode = new Node<>();
+            node = entries.putIfAbsent(key, newNode);
+            if (node == null) {
+                node = newNode;
+            }
+        }
+
+        V value = load(key, node, loader);
+        evictIfNeeded();
+        return value;
+    }
+
+    V getIfPresent(K key) {
+        Node<V> node = entries.get(key);
+        if (node == null || !node.loaded) {
+            return null;
+        }
+        node.referenced = true;
+        return node.value;
+    }
+
+    boolean containsKey(K key) {
+        return getIfPresent(key) != null;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Total weight of the loaded entries.
+     */
+    long weightedSize() {
+        return weight.get();
+    }
+
+    long loadCount() {
+        return loads.sum();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    private V load(K key, Node<V> node, Function<? super K, ? extends V> loader) {
+        synchronized (node) {
+            if (node.loaded) {
+                return node.value;
+            }
+            if (node.removed) {
+                // The load this thread was waiting for failed; try again with a new node
+                return computeIfAbsent(key, loader);
+            }
+
+            V value;
+            int valueWeight;
+            try {
+                loads.increment();
+                value = loader.apply(key);
+                valueWeight = value == null ? 0 : weigher.applyAsInt(key, value);
+                if (valueWeight < 0) {
+                    throw new IllegalArgumentException("negative weight: " + valueWeight);
+                }
+            } catch (RuntimeException | Error e) {
+                remove(key, node);
+                throw e;
+            }
+            // Threads waiting for this load get the value, even if it is null and not cached
+            node.value = value;
+            node.loaded = true;
+            if (value == null) {
+                remove(key, node);
+            } else {
+                node.weight = valueWeight;
+                weight.addAndGet(valueWeight);
+                clock.add(key);
+            }
+            return value;
+        }
+    }
+
+    private void remove(K key, Node<V> node) {
+        node.removed = true;
+        entries.remove(key, node);
+    }
+
+    private void evictIfNeeded() {
+        if (weight.get() <= maximumWeight || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (weight.get() > maximumWeight) {
+                K key = clock.poll();
+                if (key == null) {
+                    return;
+                }
+                Node<V> node = entries.get(key);
+                if (node.referenced) {
+                    node.referenced = false;
+                    clock.add(key);
+                    continue;
+                }
+                if (entries.remove(key, node)) {
+                    node.removed = true;
+                    weight.addAndGet(-node.weight);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Node<V> {
+        private volatile V value;
+        private volatile boolean loaded;
+        private volatile boolean removed;
+        private volatile boolean referenced;
+        private int weight; // Written before the key is added to the clock, read after
+    }
+}
@@ -0,0 +1,120 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import com.jashburn.javafeatures.java8.lambdas.Artist;
+import org.junit.jupiter.api.Test;
+
+class BoundedConcurrentCacheDemo {
+
+    private static final int THREADS = 64;
+
+    private final ConcurrentHashMap<String, AtomicInteger> loadsPerKey = new ConcurrentHashMap<>();
+
+    private Artist slowArtistFromDB(String name) {
+        loadsPerKey.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+        try {
+            TimeUnit.MILLISECONDS.sleep(1);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return new Artist(name, "UK");
+    }
+
+    /**
+     * Many threads asking for the same few artists at the same time: each artist is loaded once.
+     */
+    @Test
+    void loadOncePerKeyUnderContention() throws InterruptedException {
+        BoundedConcurrentCache<String, Artist> cache = new BoundedConcurrentCache<>(1_000);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        CompletableFuture<?>[] lookups = IntStream.range(0, THREADS)
+                .mapToObj(thread -> CompletableFuture.runAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                    for (int i = 0; i < 1_000; i++) {
+                        assertNotNull(cache.computeIfAbsent("artist " + i % 10,
+                                this::slowArtistFromDB));
+                    }
+                }, executor)).toArray(CompletableFuture[]::new);
+        start.countDown();
+        CompletableFuture.allOf(lookups).join();
+        executor.shutdown();
+
+        assertAll(() -> assertEquals(10, loadsPerKey.size()),
+                () -> loadsPerKey.forEach((key, loads) -> assertEquals(1, loads.get(), key)),
+                () -> assertEquals(10, cache.loadCount()));
+    }
+
+    @Test
+    void boundedBySize() {
+        BoundedConcurrentCache<String, Artist> cache = new BoundedConcurrentCache<>(100);
+        for (int i = 0; i < 1_000; i++) {
+            cache.computeIfAbsent("artist " + i, name -> new Artist(name, "UK"));
+        }
+
+        assertAll(() -> assertEquals(100, cache.size()),
+                () -> assertEquals(900, cache.evictionCount()));
+    }
+
+    /**
+     * Entries weighed by their size in bytes: the cache holds as many as fit in 1 MiB, however
+     * many that is.
+     */
+    @Test
+    void boundedByWeight() {
+        BoundedConcurrentCache<Integer, byte[]> cache =
+                new BoundedConcurrentCache<>(1 << 20, (key, value) -> value.length);
+        for (int i = 0; i < 100; i++) {
+            cache.computeIfAbsent(i, key -> new byte[64 * 1024]);
+        }
+        cache.computeIfAbsent(100, key -> new byte[512 * 1024]);
+
+        assertAll(() -> assertEquals(1 << 20, cache.weightedSize()),
+                () -> assertEquals(9, cache.size()),
+                () -> assertNotNull(cache.getIfPresent(100)));
+    }
+
+    /**
+     * An artist that is read between evictions gets a second chance, so it survives a stream of
+     * artists that are each read once.
+     */
+    @Test
+    void recentlyReadEntriesSurviveEviction() {
+        BoundedConcurrentCache<String, Artist> cache = new BoundedConcurrentCache<>(10);
+        cache.computeIfAbsent("John Lennon", name -> new Artist(name, "UK"));
+
+        for (int i = 0; i < 100; i++) {
+            cache.computeIfAbsent("artist " + i, name -> new Artist(name, "UK"));
+            assertTrue(cache.containsKey("John Lennon"), () -> "evicted after artists added");
+        }
+    }
+
+    @Test
+    void failedLoadIsRetried() {
+        BoundedConcurrentCache<String, Artist> cache = new BoundedConcurrentCache<>(10);
+        assertThrows(IllegalStateException.class, () -> cache.computeIfAbsent("John Lennon",
+                name -> {
+                    throw new IllegalStateException("DB unavailable");
+                }));
+
+        assertEquals("John Lennon",
+                cache.computeIfAbsent("John Lennon", name -> new Artist(name, "UK")).getName());
+    }
+}
@@ -0,0 +1,144 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * Accumulates values into a {@code Map<K, List<V>>}, as {@code map.merge(key, values,
+ * this::mergeLists)} does, but without copying.
+ * <ul>
+ * <li>each key's values are appended into a chain of fixed arrays (chunks), each twice the size
+ * of the one before up to {@link #MAX_CHUNK_SIZE}, so nothing is copied as the list grows</li>
+ * <li>two multimaps are combined by linking one's chunks onto the end of the other's, which is
+ * what makes the {@link #toMultimap(Function, Function)} collector cheap to run in parallel</li>
+ * <li>{@link #put(Object, Object)} can be called from several threads at once (e.g., from a
+ * parallel {@code forEach}); appends lock only the key's own chain</li>
+ * <li>{@link #freeze()} copies each key's values once, into an exactly sized, unmodifiable
+ * list</li>
+ * </ul>
+ */
+class ChunkedMultimap<K, V> {
+
+    private static final int FIRST_CHUNK_SIZE = 8;
+    private static final int MAX_CHUNK_SIZE = 4096;
+
+    private final ConcurrentHashMap<K, Chunks> values = new ConcurrentHashMap<>();
+
+    void put(K key, V value) {
+        Chunks chunks = values.computeIfAbsent(key, k -> new Chunks());
+        synchronized (chunks) {
+            chunks.add(value);
+        }
+    }
+
+    void putAll(K key, Collection<? extends V> newValues) {
+        Chunks chunks = values.computeIfAbsent(key, k -> new Chunks());
+        synchronized (chunks) {
+            newValues.forEach(chunks::add);
+        }
+    }
+
+    /**
+     * Moves all of {@code other}'s values onto the end of this multimap's. {@code other} must not
+     * be used afterwards.
+     */
+    ChunkedMultimap<K, V> merge(ChunkedMultimap<K, V> other) {
+        other.values.forEach((key, otherChunks) -> values.merge(key, otherChunks,
+                (chunks, moved) -> {
+                    synchronized (chunks) {
+                        chunks.link(moved);
+                    }
+                    return chunks;
+                }));
+        return this;
+    }
+
+    int size(K key) {
+        Chunks chunks = values.get(key);
+        return chunks == null ? 0 : chunks.size;
+    }
+
+    Map<K, List<V>> freeze() {
+        Map<K, List<V>> frozen = new HashMap<>(values.size() * 4 / 3 + 1);
+        values.forEach((key, chunks) -> {
+            synchronized (chunks) {
+                frozen.put(key, chunks.toList());
+            }
+        });
+        return Collections.unmodifiableMap(frozen);
+    }
+
+    /**
+     * Collects into a {@code Map<K, List<V>>}, like {@code groupingBy(keyMapper,
+     * mapping(valueMapper, toList()))}, keeping each key's values in encounter order.
+     */
+    static <T, K, V> Collector<T, ?, Map<K, List<V>>> toMultimap(
+            Function<? super T, ? extends K> keyMapper,
+            Function<? super T, ? extends V> valueMapper) {
+        return Collector.of(ChunkedMultimap<K, V>::new,
+                (multimap, element) -> multimap.put(keyMapper.apply(element),
+                        valueMapper.apply(element)),
+                ChunkedMultimap::merge, ChunkedMultimap::freeze);
+    }
+
+    private static final class Chunk {
+        private final Object[] items;
+        private int count;
+
+        Chunk(int capacity) {
+            items = new Object[capacity];
+        }
+    }
+
+    /**
+     * Chain of chunks for one key. Only accessed while holding its lock.
+     */
+    private static final class Chunks {
+        private final List<Chunk> chain = new ArrayList<>();
+        private Chunk last;
+        private int size;
+
+        void add(Object value) {
+            if (last == null || last.count == last.items.length) {
+                int capacity = last == null ? FIRST_CHUNK_SIZE
+                        : Math.min(MAX_CHUNK_SIZE, last.items.length * 2);
+                last = new Chunk(capacity);
+                chain.add(last);
+            }
+            last.items[last.count++] = value;
+            size++;
+        }
+
+        /**
+         * The last chunk of this chain may not be full; it is left as it is, and appends carry on
+         * in the other chain's last chunk.
+         */
+        void link(Chunks other) {
+            if (other.size == 0) {
+                return;
+            }
+            chain.addAll(other.chain);
+            last = other.last;
+            size += other.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        <V> List<V> toList() {
+            Object[] all = new Object[size];
+            int index = 0;
+            for (Chunk chunk : chain) {
+                System.arraycopy(chunk.items, 0, all, index, chunk.count);
+                index += chunk.count;
+            }
+            return Collections.unmodifiableList((List<V>) Arrays.asList(all));
+        }
+    }
+}
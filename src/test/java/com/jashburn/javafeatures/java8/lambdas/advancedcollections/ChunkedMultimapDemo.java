@@ -0,0 +1,83 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class ChunkedMultimapDemo {
+
+    private static final int VALUES = 2_000_000;
+    private static final int KEYS = 1_000;
+
+    @Test
+    void parallelCollectorKeepsEncounterOrder() {
+        Map<Integer, List<Integer>> expected =
+                IntStream.range(0, VALUES).boxed().collect(groupingBy(i -> i % KEYS, toList()));
+
+        Map<Integer, List<Integer>> multimap = IntStream.range(0, VALUES).boxed().parallel()
+                .collect(ChunkedMultimap.toMultimap(i -> i % KEYS, i -> i));
+
+        assertEquals(expected, multimap);
+    }
+
+    @Test
+    void concurrentPuts() {
+        ChunkedMultimap<Integer, Integer> multimap = new ChunkedMultimap<>();
+        IntStream.range(0, VALUES).parallel().forEach(i -> multimap.put(i % KEYS, i));
+
+        Map<Integer, List<Integer>> frozen = multimap.freeze();
+        assertAll(() -> assertEquals(KEYS, frozen.size()),
+                () -> assertEquals(VALUES / KEYS, frozen.get(0).size()),
+                () -> assertEquals(VALUES,
+                        frozen.values().stream().mapToInt(List::size).sum()));
+    }
+
+    @Test
+    void frozenListsAreUnmodifiable() {
+        ChunkedMultimap<String, Integer> multimap = new ChunkedMultimap<>();
+        multimap.put("one", 1);
+        List<Integer> frozen = multimap.freeze().get("one");
+
+        assertThrows(UnsupportedOperationException.class, () -> frozen.add(2));
+    }
+
+    /**
+     * The nightly index build pattern: many small batches of values merged into each key's list.
+     */
+    @Test
+    void mergeHeavyBuild() {
+        int batchSize = 4;
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            Map<Integer, List<Integer>> merged = new HashMap<>();
+            for (int i = 0; i < VALUES; i += batchSize) {
+                List<Integer> batch = new ArrayList<>(List.of(i, i + 1, i + 2, i + 3));
+                merged.merge(i % KEYS, batch, (oldList, newList) -> {
+                    oldList.addAll(newList);
+                    return oldList;
+                });
+            }
+            long mergeMillis = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            ChunkedMultimap<Integer, Integer> multimap = new ChunkedMultimap<>();
+            for (int i = 0; i < VALUES; i += batchSize) {
+                multimap.putAll(i % KEYS, List.of(i, i + 1, i + 2, i + 3));
+            }
+            Map<Integer, List<Integer>> frozen = multimap.freeze();
+            long chunkedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println("HashMap.merge: " + mergeMillis + "ms, ChunkedMultimap: "
+                    + chunkedMillis + "ms");
+            assertEquals(merged, frozen);
+        }
+    }
+}
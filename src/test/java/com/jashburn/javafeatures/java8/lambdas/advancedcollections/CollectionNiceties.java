@@ -38,6 +38,53 @@ class CollectionNiceties {
         });
     }
 
+    /**
+     * Same as {@link #mapComputeIfAbsent()}, but with a cache that can be shared between threads
+     * and does not grow without bound.
+     */
+    @Test
+    void boundedConcurrentCacheComputeIfAbsent() {
+        db = Map.of(paulMcCartney.getName(), paulMcCartney, johnLennon.getName(), johnLennon);
+
+        BoundedConcurrentCache<String, Artist> artistCache = new BoundedConcurrentCache<>(100);
+        artistCache.computeIfAbsent(johnLennon.getName(), this::getArtistFromDB);
+
+        assertAll(() -> {
+            assertEquals(johnLennon,
+                    artistCache.computeIfAbsent("John Lennon", this::getArtistFromDB));
+        }, () -> {
+            assertEquals(paulMcCartney,
+                    artistCache.computeIfAbsent("Paul McCartney", this::getArtistFromDB));
+            assertEquals(paulMcCartney, artistCache.getIfPresent("Paul McCartney"));
+        }, () -> {
+            assertNull(artistCache.computeIfAbsent("Ringo Starr", this::getArtistFromDB));
+            assertFalse(artistCache.containsKey("Ringo Starr"));
+        });
+    }
+
+    /**
+     * Lookups for artists that are not in the DB are answered by the guard, without reading the
+     * DB.
+     */
+    @Test
+    void negativeLookupGuard() {
+        db = Map.of(paulMcCartney.getName(), paulMcCartney, johnLennon.getName(), johnLennon);
+        NegativeLookupGuard<String, Artist> guardedDB =
+                new NegativeLookupGuard<>(db.keySet(), 0.01, this::getArtistFromDB);
+
+        BoundedConcurrentCache<String, Artist> artistCache = new BoundedConcurrentCache<>(100);
+
+        assertAll(() -> {
+            assertEquals(paulMcCartney,
+                    artistCache.computeIfAbsent("Paul McCartney", guardedDB));
+            assertEquals(1, guardedDB.passedCount());
+        }, () -> {
+            assertNull(artistCache.computeIfAbsent("Ringo Starr", guardedDB));
+            assertNull(artistCache.computeIfAbsent("Ringo Starr", guardedDB));
+            assertEquals(2, guardedDB.avoidedCount());
+        });
+    }
+
     private Artist getArtistFromDB(String name) {
         return db.get(name);
     }
@@ -60,6 +107,23 @@ class CollectionNiceties {
         });
     }
 
+    /**
+     * Same result as {@link #mapMerge()}, but appending values to the lists rather than merging in
+     * new lists.
+     */
+    @Test
+    void chunkedMultimapPutAll() {
+        ChunkedMultimap<String, Integer> multimap = new ChunkedMultimap<>();
+        multimap.put("one", 1);
+
+        multimap.putAll("one", List.of(2, 3));
+        multimap.putAll("two", List.of(2, 3));
+
+        Map<String, List<Integer>> map = multimap.freeze();
+        assertAll(() -> assertEquals(List.of(1, 2, 3), map.get("one")),
+                () -> assertEquals(List.of(2, 3), map.get("two")));
+    }
+
     private List<Integer> mergeLists(List<Integer> oldList, List<Integer> currentList) {
         if (currentList == null)
             return null;
@@ -43,6 +43,19 @@ class ComposingCollectors {
         assertEquals(expected, numOfAlbumsByArtist);
     }
 
+    /**
+     * Same count in parallel, with the albums for each artist counted into a shared concurrent map
+     * of counters instead of a map per fork/join leaf.
+     */
+    @Test
+    void concurrentCountingCollector() {
+        Map<Artist, Long> numOfAlbumsByArtist = getAlbums().parallel()
+                .collect(ConcurrentCounting.counting(Album::getMainMusician));
+
+        Map<Artist, Long> expected = Map.of(johnColtrane, 3L, new Artist("aa", "UK"), 1L);
+        assertEquals(expected, numOfAlbumsByArtist);
+    }
+
     /**
      * List the albums by name for each artist.
      * <p>
@@ -0,0 +1,79 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.Collector.Characteristics;
+
+/**
+ * Group-by counting collectors for parallel streams, as alternatives to
+ * {@code groupingBy(classifier, counting())}.
+ * <ul>
+ * <li>{@code groupingBy} gives each leaf task its own {@code HashMap} and merges them in pairs,
+ * which costs a map per leaf and a merge per key per level of the fork/join tree</li>
+ * <li>{@code groupingByConcurrent} shares one map, but updates each count with
+ * {@code merge}, so threads counting the same key contend on its bin lock</li>
+ * <li>these collectors share one {@code ConcurrentHashMap} of {@link LongAdder} cells: the map is
+ * only written the first time a key is seen, and after that the count is incremented on the
+ * adder, which spreads contended increments over striped cells</li>
+ * </ul>
+ * The collectors are {@link Characteristics#CONCURRENT} and {@link Characteristics#UNORDERED}, so
+ * a parallel stream accumulates straight into the shared map without merging; the finisher sums
+ * the cells into a plain {@code Map<K, Long>}.
+ */
+class ConcurrentCounting {
+
+    private static final Characteristics[] CHARACTERISTICS =
+            {Characteristics.CONCURRENT, Characteristics.UNORDERED};
+
+    private ConcurrentCounting() {
+    }
+
+    static <T, K> Collector<T, ?, Map<K, Long>> counting(
+            Function<? super T, ? extends K> classifier) {
+        return Collector.of(ConcurrentHashMap<K, LongAdder>::new,
+                (cells, element) -> cell(cells, classifier.apply(element)).increment(),
+                ConcurrentCounting::combine,
+                ConcurrentCounting::finish,
+                CHARACTERISTICS);
+    }
+
+    static <T, K> Collector<T, ?, Map<K, Long>> summing(
+            Function<? super T, ? extends K> classifier, ToLongFunction<? super T> mapper) {
+        return Collector.of(ConcurrentHashMap<K, LongAdder>::new,
+                (cells, element) -> cell(cells, classifier.apply(element))
+                        .add(mapper.applyAsLong(element)),
+                ConcurrentCounting::combine,
+                ConcurrentCounting::finish,
+                CHARACTERISTICS);
+    }
+
+    /**
+     * Looks the cell up with a plain {@code get} first: {@code computeIfAbsent} locks the bin
+     * even when the key is already there in some JDK versions.
+     */
+    private static <K> LongAdder cell(ConcurrentHashMap<K, LongAdder> cells, K key) {
+        LongAdder cell = cells.get(key);
+        return cell != null ? cell : cells.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    /**
+     * Streams never call this, as they accumulate concurrently into a single map, but other users
+     * of a collector may.
+     */
+    private static <K> ConcurrentHashMap<K, LongAdder> combine(
+            ConcurrentHashMap<K, LongAdder> left, ConcurrentHashMap<K, LongAdder> right) {
+        right.forEach((key, count) -> cell(left, key).add(count.sum()));
+        return left;
+    }
+
+    private static <K> Map<K, Long> finish(ConcurrentHashMap<K, LongAdder> cells) {
+        Map<K, Long> counts = new HashMap<>((int) (cells.size() / 0.75f) + 1);
+        cells.forEach((key, count) -> counts.put(key, count.sum()));
+        return counts;
+    }
+}
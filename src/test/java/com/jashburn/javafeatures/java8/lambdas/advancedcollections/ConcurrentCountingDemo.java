@@ -0,0 +1,66 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.groupingByConcurrent;
+import static java.util.stream.Collectors.summingLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentCountingDemo {
+
+    private static final int ELEMENTS = 4_000_000;
+
+    @Test
+    void sameCountsAsGroupingBy() {
+        Map<Integer, Long> expected = IntStream.range(0, ELEMENTS).boxed()
+                .collect(groupingBy(i -> i % 1_000, counting()));
+
+        assertEquals(expected, IntStream.range(0, ELEMENTS).boxed().parallel()
+                .collect(ConcurrentCounting.counting(i -> i % 1_000)));
+        assertEquals(expected, IntStream.range(0, ELEMENTS).boxed()
+                .collect(ConcurrentCounting.counting(i -> i % 1_000)));
+    }
+
+    @Test
+    void summing() {
+        Map<Boolean, Long> expected = IntStream.range(0, 1_000).boxed()
+                .collect(groupingBy(i -> i % 2 == 0, summingLong(i -> i)));
+
+        assertEquals(expected, IntStream.range(0, 1_000).boxed().parallel()
+                .collect(ConcurrentCounting.summing(i -> i % 2 == 0, i -> i)));
+    }
+
+    /**
+     * High-cardinality (100,000 keys) and low-cardinality (8 keys, so heavily contended) counts,
+     * against {@code groupingBy} and {@code groupingByConcurrent}.
+     */
+    @Test
+    void timing() {
+        for (int keys : new int[] {100_000, 8}) {
+            Supplier<Stream<Integer>> elements =
+                    () -> IntStream.range(0, ELEMENTS).map(i -> i * 31 % keys).boxed().parallel();
+            for (int run = 0; run < 3; run++) {
+                long groupingBy =
+                        time(() -> elements.get().collect(groupingBy(i -> i, counting())));
+                long concurrent = time(
+                        () -> elements.get().collect(groupingByConcurrent(i -> i, counting())));
+                long adders =
+                        time(() -> elements.get().collect(ConcurrentCounting.counting(i -> i)));
+                System.out.println(keys + " keys: groupingBy " + groupingBy
+                        + " ms, groupingByConcurrent " + concurrent + " ms, ConcurrentCounting "
+                        + adders + " ms");
+            }
+        }
+    }
+
+    private static long time(Supplier<Map<Integer, Long>> counting) {
+        long start = System.currentTimeMillis();
+        counting.get();
+        return System.currentTimeMillis() - start;
+    }
+}
@@ -0,0 +1,104 @@
+package com.jashburn.javafeatures.java8.lambdas.advancedcollections;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Wraps a database lookup (such as {@code getArtistFromDB}) with a {@link BloomFilter} of the keys
+ * known to be in the database, so that lookups for keys that are definitely not there return
+ * {@code null} straight away.
+ * <p>
+ * Keys added to the database must be passed to {@link #add(Object)}, or the guard will keep
+ * answering {@code null} for them. Once many keys have been added (or removed) since it was built,
+ * the filter can be rebuilt from the full key set with {@link #rebuild(Collection)}; lookups carry
+ * on against the old filter until the new one is ready. Keys added while it is being built are
+ * added to the old filter and recorded, then replayed into the new one before it replaces the old,
+ * so that no added key is ever answered {@code null}.
+ */
+class NegativeLookupGuard<K, V> implements Function<K, V> {
+
+    private static final double HEADROOM = 0.5;
+
+    private final Function<? super K, ? extends V> lookup;
+    private final double falsePositiveProbability;
+    private volatile BloomFilter<K> knownKeys;
+
+    // Guarded by this: keys added since the running rebuild started, or null if there is none
+    private List<K> addedDuringRebuild;
+    private final Object rebuildLock = new Object();
+
+    private final LongAdder avoided = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+
+    NegativeLookupGuard(Collection<? extends K> knownKeys, double falsePositiveProbability,
+            Function<? super K, ? extends V> lookup) {
+        this.lookup = Objects.requireNonNull(lookup);
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.knownKeys = BloomFilter.of(knownKeys, HEADROOM, falsePositiveProbability);
+    }
+
+    @Override
+    public V apply(K key) {
+        if (!knownKeys.mightContain(key)) {
+            avoided.increment();
+            return null;
+        }
+        passed.increment();
+        return lookup.apply(key);
+    }
+
+    /**
+     * Call after adding {@code key} to the database, before it is looked up.
+     */
+    void add(K key) {
+        synchronized (this) {
+            knownKeys.add(key);
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(key);
+            }
+        }
+    }
+
+    /**
+     * @param allKeys every key in the database, including those passed to {@link #add(Object)}
+     *        before this call; it may be a live view, as keys added while it is being read are
+     *        recorded separately
+     */
+    void rebuild(Collection<? extends K> allKeys) {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                addedDuringRebuild = new ArrayList<>();
+            }
+            BloomFilter<K> rebuilt = null;
+            try {
+                rebuilt = BloomFilter.of(allKeys, HEADROOM, falsePositiveProbability);
+            } finally {
+                synchronized (this) {
+                    if (rebuilt != null) {
+                        addedDuringRebuild.forEach(rebuilt::add);
+                        knownKeys = rebuilt;
+                    }
+                    addedDuringRebuild = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of lookups answered without going to the database.
+     */
+    long avoidedCount() {
+        return avoided.sum();
+    }
+
+    /**
+     * Number of lookups passed on to the database, including false positives.
+     */
+    long passedCount() {
+        return passed.sum();
+    }
+}
@@ -0,0 +1,369 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Unrolled list: the elements are kept in chunks (arrays) of a capacity that grows with the square
+ * root of the size, so it sits between {@code ArrayList} and {@code LinkedList} (see
+ * {@link Performance}).
+ * <ul>
+ * <li>inserting or removing in the middle shifts only the elements after it in its chunk, plus
+ * the start indexes of the later chunks: O(capacity + n / capacity), which is O(sqrt(n)), rather
+ * than the O(n) element copy of an {@code ArrayList}</li>
+ * <li>the capacity is a power of two, doubled once the size passes 4 * capacity^2 and halved once
+ * it drops below capacity^2 / 4, so it stays between sqrt(n) / 2 and 2 * sqrt(n). Each resize
+ * repacks the elements into full chunks of the new capacity, in O(n), but the size has to change
+ * by a multiple of n before the next one, so this adds O(1) per insert or removal</li>
+ * <li>a full chunk is split in two, and a chunk is merged into a neighbour when together they
+ * hold at most half a chunk, so any two adjacent chunks hold more than half a chunk and there are
+ * at most 4n / capacity + 1, i.e., at most 8 * sqrt(n) + 1, chunks however many elements have
+ * been removed</li>
+ * <li>{@link #get(int)} finds the chunk by binary search over the chunks' start indexes</li>
+ * <li>the spliterator splits the index range in half and knows the exact size of both halves
+ * ({@link Spliterator#SIZED} and {@link Spliterator#SUBSIZED}), like an {@code ArrayList}'s, and
+ * then walks each chunk as an array, unlike a {@code LinkedList}'s, which can only split off
+ * batches it has copied by walking the links one at a time</li>
+ * </ul>
+ * Not thread-safe.
+ */
+class ChunkedList<E> extends AbstractList<E> implements RandomAccess {
+
+    static final int MIN_CHUNK_CAPACITY = 16;
+
+    private int chunkCapacity = MIN_CHUNK_CAPACITY;
+    private Object[][] chunks = new Object[4][];
+    private int[] chunkSizes = new int[4];
+    private int[] chunkStarts = new int[4];
+    private int chunkCount;
+    private int size;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        int chunk = chunkOf(index);
+        return (E) chunks[chunk][index - chunkStarts[chunk]];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        Objects.checkIndex(index, size);
+        int chunk = chunkOf(index);
+        Object[] elements = chunks[chunk];
+        int offset = index - chunkStarts[chunk];
+        E previous = (E) elements[offset];
+        elements[offset] = element;
+        return previous;
+    }
+
+    @Override
+    public boolean add(E element) {
+        int last = chunkCount - 1;
+        if (last < 0 || chunkSizes[last] == chunkCapacity) {
+            insertChunk(chunkCount, new Object[chunkCapacity], 0);
+            last++;
+        }
+        chunks[last][chunkSizes[last]++] = element;
+        size++;
+        modCount++;
+        growIfLarge();
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        if (index == size) {
+            add(element);
+            return;
+        }
+        Objects.checkIndex(index, size);
+        int chunk = chunkOf(index);
+        if (chunkSizes[chunk] == chunkCapacity) {
+            splitChunk(chunk);
+            if (index >= chunkStarts[chunk + 1]) {
+                chunk++;
+            }
+        }
+        Object[] elements = chunks[chunk];
+        int offset = index - chunkStarts[chunk];
+        System.arraycopy(elements, offset, elements, offset + 1, chunkSizes[chunk] - offset);
+        elements[offset] = element;
+        chunkSizes[chunk]++;
+        shiftStarts(chunk + 1, 1);
+        size++;
+        modCount++;
+        growIfLarge();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        Objects.checkIndex(index, size);
+        int chunk = chunkOf(index);
+        Object[] elements = chunks[chunk];
+        int offset = index - chunkStarts[chunk];
+        E removed = (E) elements[offset];
+        int moved = --chunkSizes[chunk] - offset;
+        System.arraycopy(elements, offset + 1, elements, offset, moved);
+        elements[chunkSizes[chunk]] = null;
+        if (chunkSizes[chunk] == 0) {
+            removeChunk(chunk);
+            shiftStarts(chunk, -1);
+        } else {
+            shiftStarts(chunk + 1, -1);
+            mergeIfUnderfull(chunk);
+        }
+        size--;
+        modCount++;
+        shrinkIfSmall();
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(chunks, 0, chunkCount, null);
+        chunkCount = 0;
+        chunkCapacity = MIN_CHUNK_CAPACITY;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        int expectedModCount = modCount;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            Object[] elements = chunks[chunk];
+            for (int i = 0, chunkSize = chunkSizes[chunk]; i < chunkSize; i++) {
+                action.accept((E) elements[i]);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return new ChunkSpliterator(0, size, modCount);
+    }
+
+    /**
+     * @return the chunk holding {@code index}: the last chunk starting at or before it
+     */
+    private int chunkOf(int index) {
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunkStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void splitChunk(int chunk) {
+        Object[] elements = chunks[chunk];
+        int half = chunkSizes[chunk] / 2;
+        Object[] upper = new Object[chunkCapacity];
+        System.arraycopy(elements, half, upper, 0, chunkSizes[chunk] - half);
+        Arrays.fill(elements, half, chunkSizes[chunk], null);
+        insertChunk(chunk + 1, upper, chunkSizes[chunk] - half);
+        chunkSizes[chunk] = half;
+        chunkStarts[chunk + 1] = chunkStarts[chunk] + half;
+    }
+
+    /**
+     * Merges {@code chunk} with a neighbour if together they hold at most half a chunk.
+     */
+    private void mergeIfUnderfull(int chunk) {
+        int limit = chunkCapacity / 2;
+        if (chunk + 1 < chunkCount && chunkSizes[chunk] + chunkSizes[chunk + 1] <= limit) {
+            mergeWithNext(chunk);
+        } else if (chunk > 0 && chunkSizes[chunk - 1] + chunkSizes[chunk] <= limit) {
+            mergeWithNext(chunk - 1);
+        }
+    }
+
+    private void mergeWithNext(int chunk) {
+        int next = chunk + 1;
+        System.arraycopy(chunks[next], 0, chunks[chunk], chunkSizes[chunk], chunkSizes[next]);
+        chunkSizes[chunk] += chunkSizes[next];
+        removeChunk(next);
+    }
+
+    private void growIfLarge() {
+        if (size > 4L * chunkCapacity * chunkCapacity) {
+            resizeChunks(chunkCapacity * 2);
+        }
+    }
+
+    private void shrinkIfSmall() {
+        if (chunkCapacity > MIN_CHUNK_CAPACITY && size < chunkCapacity * chunkCapacity / 4) {
+            resizeChunks(chunkCapacity / 2);
+        }
+    }
+
+    /**
+     * Repacks the elements, in order, into full chunks of {@code capacity}.
+     */
+    private void resizeChunks(int capacity) {
+        Object[][] oldChunks = chunks;
+        int[] oldChunkSizes = chunkSizes;
+        int oldChunkCount = chunkCount;
+        int length = Math.max(4, (size + capacity - 1) / capacity);
+        chunks = new Object[length][];
+        chunkSizes = new int[length];
+        chunkStarts = new int[length];
+        chunkCapacity = capacity;
+
+        int chunk = -1;
+        int filled = capacity;
+        for (int old = 0; old < oldChunkCount; old++) {
+            int copied = 0;
+            while (copied < oldChunkSizes[old]) {
+                if (filled == capacity) {
+                    chunk++;
+                    chunks[chunk] = new Object[capacity];
+                    chunkStarts[chunk] = chunk * capacity;
+                    filled = 0;
+                }
+                int count = Math.min(oldChunkSizes[old] - copied, capacity - filled);
+                System.arraycopy(oldChunks[old], copied, chunks[chunk], filled, count);
+                copied += count;
+                filled += count;
+                chunkSizes[chunk] = filled;
+            }
+        }
+        chunkCount = chunk + 1;
+    }
+
+    int chunkCapacity() {
+        return chunkCapacity;
+    }
+
+    int chunkCount() {
+        return chunkCount;
+    }
+
+    private void insertChunk(int chunk, Object[] elements, int chunkSize) {
+        if (chunkCount == chunks.length) {
+            int capacity = chunkCount * 2;
+            chunks = Arrays.copyOf(chunks, capacity);
+            chunkSizes = Arrays.copyOf(chunkSizes, capacity);
+            chunkStarts = Arrays.copyOf(chunkStarts, capacity);
+        }
+        int moved = chunkCount - chunk;
+        System.arraycopy(chunks, chunk, chunks, chunk + 1, moved);
+        System.arraycopy(chunkSizes, chunk, chunkSizes, chunk + 1, moved);
+        System.arraycopy(chunkStarts, chunk, chunkStarts, chunk + 1, moved);
+        chunks[chunk] = elements;
+        chunkSizes[chunk] = chunkSize;
+        chunkStarts[chunk] = chunk == 0 ? 0 : chunkStarts[chunk - 1] + chunkSizes[chunk - 1];
+        chunkCount++;
+    }
+
+    private void removeChunk(int chunk) {
+        int moved = chunkCount - chunk - 1;
+        System.arraycopy(chunks, chunk + 1, chunks, chunk, moved);
+        System.arraycopy(chunkSizes, chunk + 1, chunkSizes, chunk, moved);
+        System.arraycopy(chunkStarts, chunk + 1, chunkStarts, chunk, moved);
+        chunks[--chunkCount] = null;
+    }
+
+    private void shiftStarts(int fromChunk, int delta) {
+        for (int chunk = fromChunk; chunk < chunkCount; chunk++) {
+            chunkStarts[chunk] += delta;
+        }
+    }
+
+    /**
+     * Covers the elements at indexes {@code [from, to)}.
+     */
+    private class ChunkSpliterator implements Spliterator<E> {
+
+        private int from;
+        private final int to;
+        private final int expectedModCount;
+
+        ChunkSpliterator(int from, int to, int expectedModCount) {
+            this.from = from;
+            this.to = to;
+            this.expectedModCount = expectedModCount;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int middle = (from + to) >>> 1;
+            if (middle - from < 2) {
+                return null;
+            }
+            Spliterator<E> prefix = new ChunkSpliterator(from, middle, expectedModCount);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept(get(from++));
+            checkForComodification();
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (from >= to) {
+                return;
+            }
+            int chunk = chunkOf(from);
+            int index = from;
+            while (index < to) {
+                Object[] elements = chunks[chunk];
+                int start = chunkStarts[chunk];
+                int end = Math.min(to, start + chunkSizes[chunk]);
+                for (int i = index - start; i < end - start; i++) {
+                    action.accept((E) elements[i]);
+                }
+                index = end;
+                chunk++;
+            }
+            from = to;
+            checkForComodification();
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
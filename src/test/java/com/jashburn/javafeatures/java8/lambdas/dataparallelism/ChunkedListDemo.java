@@ -0,0 +1,155 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class ChunkedListDemo {
+
+    /**
+     * Random inserts, removals and updates give the same list as an {@code ArrayList}.
+     */
+    @Test
+    void matchesArrayList() {
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> chunked = new ChunkedList<>();
+        Random random = new Random(3);
+
+        for (int i = 0; i < 100_000; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 6 || expected.isEmpty()) {
+                int index = random.nextInt(expected.size() + 1);
+                expected.add(index, i);
+                chunked.add(index, i);
+            } else if (operation < 9) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), chunked.remove(index));
+            } else {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.set(index, -i), chunked.set(index, -i));
+            }
+        }
+
+        assertEquals(expected, chunked);
+        assertEquals(expected, chunked.stream().parallel().collect(Collectors.toList()));
+    }
+
+    @Test
+    void spliteratorSplitsEvenly() {
+        List<Integer> chunked = IntStream.range(0, 10_000).boxed()
+                .collect(Collectors.toCollection(ChunkedList::new));
+        Spliterator<Integer> suffix = chunked.spliterator();
+        Spliterator<Integer> prefix = suffix.trySplit();
+
+        assertAll(() -> assertEquals(5_000, prefix.estimateSize()),
+                () -> assertEquals(5_000, suffix.estimateSize()),
+                () -> assertTrue(prefix.hasCharacteristics(Spliterator.SUBSIZED)),
+                () -> assertEquals(49_995_000L,
+                        chunked.parallelStream().mapToLong(Integer::longValue).sum()));
+    }
+
+    @Test
+    void emptyingAndConcurrentModification() {
+        List<Integer> chunked = new ChunkedList<>();
+        IntStream.range(0, 3_000).forEach(chunked::add);
+        while (!chunked.isEmpty()) {
+            chunked.remove(chunked.size() / 2);
+        }
+        chunked.add(0, 7);
+
+        assertEquals(List.of(7), chunked);
+        assertThrows(ConcurrentModificationException.class,
+                () -> chunked.forEach(element -> chunked.add(element)));
+    }
+
+    /**
+     * Removing most elements merges the emptied chunks, rather than leaving many small ones.
+     */
+    @Test
+    void underfullChunksAreMerged() {
+        ChunkedList<Integer> chunked = new ChunkedList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            chunked.add(random.nextInt(chunked.size() + 1), i);
+        }
+        int chunksWhenFull = chunked.chunkCount();
+        while (chunked.size() > 5_000) {
+            chunked.remove(random.nextInt(chunked.size()));
+        }
+
+        assertTrue(chunked.chunkCount() <= 4 * chunked.size() / chunked.chunkCapacity() + 1,
+                chunked.chunkCount() + " chunks, down from " + chunksWhenFull);
+    }
+
+    /**
+     * The chunk capacity follows the size up and back down, so the number of chunks, and the cost
+     * of an insert, stays around sqrt(n).
+     */
+    @Test
+    void chunkCountStaysAroundSqrtSize() {
+        ChunkedList<Integer> chunked = new ChunkedList<>();
+        Random random = new Random(7);
+        List<String> outOfRange = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            chunked.add(random.nextInt(chunked.size() + 1), i);
+            checkChunkCount(chunked, outOfRange);
+        }
+        while (!chunked.isEmpty()) {
+            chunked.remove(random.nextInt(chunked.size()));
+            checkChunkCount(chunked, outOfRange);
+        }
+
+        assertAll(() -> assertEquals(List.of(), outOfRange),
+                () -> assertEquals(ChunkedList.MIN_CHUNK_CAPACITY, chunked.chunkCapacity()));
+    }
+
+    private static void checkChunkCount(ChunkedList<?> chunked, List<String> outOfRange) {
+        int size = chunked.size();
+        if (size < 4 * ChunkedList.MIN_CHUNK_CAPACITY * ChunkedList.MIN_CHUNK_CAPACITY
+                || size % 1_000 != 0) {
+            return;
+        }
+        double sqrt = Math.sqrt(size);
+        if (chunked.chunkCapacity() < sqrt / 2 || chunked.chunkCapacity() > 2 * sqrt) {
+            outOfRange.add("capacity " + chunked.chunkCapacity() + " for " + size + " elements");
+        }
+        if (chunked.chunkCount() < sqrt / 2 || chunked.chunkCount() > 8 * sqrt + 1) {
+            outOfRange.add(chunked.chunkCount() + " chunks for " + size + " elements");
+        }
+    }
+
+    /**
+     * 20,000 inserts at random positions into a list of 500,000.
+     */
+    @Test
+    void midListInserts() {
+        for (int run = 0; run < 2; run++) {
+            long arrayList = timeInserts(ArrayList::new);
+            long chunkedList = timeInserts(ChunkedList::new);
+            System.out.println("Mid-list inserts: ArrayList " + arrayList + " ms, ChunkedList "
+                    + chunkedList + " ms");
+        }
+    }
+
+    private static long timeInserts(Supplier<List<Integer>> listFactory) {
+        List<Integer> list = listFactory.get();
+        IntStream.range(0, 500_000).forEach(list::add);
+        Random random = new Random(1);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 20_000; i++) {
+            list.add(random.nextInt(list.size()), i);
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
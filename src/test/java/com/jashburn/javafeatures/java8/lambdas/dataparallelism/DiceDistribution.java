@@ -0,0 +1,207 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import static java.util.stream.Collectors.toList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact distribution of the total of N dice, each with the same (possibly weighted) faces.
+ * <p>
+ * The distribution of one die is a polynomial whose coefficient for x<sup>face</sup> is the
+ * probability of that face; the distribution of the total of N dice is that polynomial raised to
+ * the power N. It is computed by repeated squaring, so in O(log N) convolutions:
+ * <ul>
+ * <li>short polynomials are convolved directly, in O(ab)</li>
+ * <li>once both are longer than {@link #FFT_THRESHOLD} coefficients, they are convolved by
+ * multiplying their fast Fourier transforms, in O(n log n). The FFT path is accurate to around
+ * 1e-15 of the largest probability, so totals much rarer than that come out as 0</li>
+ * </ul>
+ */
+class DiceDistribution {
+
+    static final int FFT_THRESHOLD = 64;
+
+    /**
+     * A configuration of dice: how many, and the weights of faces 1, 2, ... (which need not sum to
+     * 1).
+     */
+    static class Dice {
+
+        private final int count;
+        private final double[] faceWeights;
+
+        Dice(int count, double... faceWeights) {
+            if (count < 1 || faceWeights.length == 0) {
+                throw new IllegalArgumentException("need at least one die with one face");
+            }
+            this.count = count;
+            this.faceWeights = faceWeights.clone();
+        }
+
+        static Dice fair(int count, int faces) {
+            double[] weights = new double[faces];
+            Arrays.fill(weights, 1);
+            return new Dice(count, weights);
+        }
+    }
+
+    private final int minTotal;
+    private final double[] probabilities;
+
+    private DiceDistribution(int minTotal, double[] probabilities) {
+        this.minTotal = minTotal;
+        this.probabilities = probabilities;
+    }
+
+    static DiceDistribution of(Dice dice) {
+        double totalWeight = Arrays.stream(dice.faceWeights).sum();
+        double[] single = Arrays.stream(dice.faceWeights).map(w -> w / totalWeight).toArray();
+        return new DiceDistribution(dice.count, power(single, dice.count));
+    }
+
+    static DiceDistribution fair(int count, int faces) {
+        return of(Dice.fair(count, faces));
+    }
+
+    /**
+     * Computes the distributions of a batch of configurations in parallel, one per task.
+     */
+    static List<DiceDistribution> ofAll(List<Dice> configurations) {
+        return configurations.parallelStream().map(DiceDistribution::of).collect(toList());
+    }
+
+    int minTotal() {
+        return minTotal;
+    }
+
+    int maxTotal() {
+        return minTotal + probabilities.length - 1;
+    }
+
+    double probability(int total) {
+        int index = total - minTotal;
+        return index < 0 || index >= probabilities.length ? 0 : probabilities[index];
+    }
+
+    double mean() {
+        double mean = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            mean += (minTotal + i) * probabilities[i];
+        }
+        return mean;
+    }
+
+    private static double[] power(double[] base, int exponent) {
+        double[] result = null;
+        double[] square = base;
+        while (true) {
+            if ((exponent & 1) != 0) {
+                result = result == null ? square : convolve(result, square);
+            }
+            exponent >>>= 1;
+            if (exponent == 0) {
+                return result;
+            }
+            square = convolve(square, square);
+        }
+    }
+
+    static double[] convolve(double[] a, double[] b) {
+        if (Math.min(a.length, b.length) <= FFT_THRESHOLD) {
+            return convolveDirect(a, b);
+        }
+        return convolveFft(a, b);
+    }
+
+    static double[] convolveDirect(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < b.length; j++) {
+                result[i + j] += a[i] * b[j];
+            }
+        }
+        return result;
+    }
+
+    static double[] convolveFft(double[] a, double[] b) {
+        int resultLength = a.length + b.length - 1;
+        int n = Integer.highestOneBit(resultLength - 1) << 1;
+        double[] aRe = Arrays.copyOf(a, n);
+        double[] aIm = new double[n];
+        fft(aRe, aIm, false);
+        double[] bRe = aRe;
+        double[] bIm = aIm;
+        if (b != a) { // Squaring, which is most of the work in power(), needs only one transform
+            bRe = Arrays.copyOf(b, n);
+            bIm = new double[n];
+            fft(bRe, bIm, false);
+        }
+
+        for (int i = 0; i < n; i++) {
+            double re = aRe[i] * bRe[i] - aIm[i] * bIm[i];
+            aIm[i] = aRe[i] * bIm[i] + aIm[i] * bRe[i];
+            aRe[i] = re;
+        }
+        fft(aRe, aIm, true);
+
+        double[] result = new double[resultLength];
+        for (int i = 0; i < resultLength; i++) {
+            // Rounding error can leave tiny negative values where the probability is near 0
+            result[i] = Math.max(0, aRe[i] / n);
+        }
+        return result;
+    }
+
+    /**
+     * In-place iterative radix-2 FFT. {@code re.length} must be a power of two. The inverse
+     * transform is not scaled by 1/n.
+     */
+    private static void fft(double[] re, double[] im, boolean inverse) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                swap(re, i, j);
+                swap(im, i, j);
+            }
+        }
+
+        // Twiddle factors computed directly rather than by repeated multiplication, for accuracy
+        double[] cos = new double[n / 2];
+        double[] sin = new double[n / 2];
+        double sign = inverse ? 1 : -1;
+        for (int k = 0; k < n / 2; k++) {
+            cos[k] = Math.cos(2 * Math.PI * k / n);
+            sin[k] = sign * Math.sin(2 * Math.PI * k / n);
+        }
+
+        for (int length = 2; length <= n; length <<= 1) {
+            int half = length >> 1;
+            int stride = n / length;
+            for (int start = 0; start < n; start += length) {
+                for (int k = 0; k < half; k++) {
+                    int even = start + k;
+                    int odd = even + half;
+                    double wRe = cos[k * stride];
+                    double wIm = sin[k * stride];
+                    double oddRe = re[odd] * wRe - im[odd] * wIm;
+                    double oddIm = re[odd] * wIm + im[odd] * wRe;
+                    re[odd] = re[even] - oddRe;
+                    im[odd] = im[even] - oddIm;
+                    re[even] += oddRe;
+                    im[even] += oddIm;
+                }
+            }
+        }
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
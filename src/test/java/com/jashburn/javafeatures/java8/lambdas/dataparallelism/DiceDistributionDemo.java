@@ -0,0 +1,78 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.List;
+import java.util.stream.IntStream;
+import com.jashburn.javafeatures.java8.lambdas.dataparallelism.DiceDistribution.Dice;
+import org.junit.jupiter.api.Test;
+
+class DiceDistributionDemo {
+
+    @Test
+    void twoDice() {
+        DiceDistribution distribution = DiceDistribution.fair(2, 6);
+
+        assertAll(() -> assertEquals(2, distribution.minTotal()),
+                () -> assertEquals(12, distribution.maxTotal()),
+                () -> assertEquals(1.0 / 36, distribution.probability(2), 1e-15),
+                () -> assertEquals(6.0 / 36, distribution.probability(7), 1e-15),
+                () -> assertEquals(3.0 / 36, distribution.probability(10), 1e-15),
+                () -> assertEquals(0, distribution.probability(13)));
+    }
+
+    /**
+     * Three weighted coins (faces 1 and 2), which can be checked by hand: P(3) = 0.9^3.
+     */
+    @Test
+    void weightedFaces() {
+        DiceDistribution distribution = DiceDistribution.of(new Dice(3, 9, 1));
+
+        assertAll(() -> assertEquals(0.729, distribution.probability(3), 1e-12),
+                () -> assertEquals(0.243, distribution.probability(4), 1e-12),
+                () -> assertEquals(0.027, distribution.probability(5), 1e-12),
+                () -> assertEquals(0.001, distribution.probability(6), 1e-12));
+    }
+
+    @Test
+    void fftMatchesDirectConvolution() {
+        double[] a = IntStream.range(0, 300).mapToDouble(i -> Math.sin(i) + 1).toArray();
+        double[] b = IntStream.range(0, 200).mapToDouble(i -> Math.cos(i) + 1).toArray();
+
+        assertArrayEquals(DiceDistribution.convolveDirect(a, b), DiceDistribution.convolveFft(a, b),
+                1e-9);
+    }
+
+    @Test
+    void manyDice() {
+        DiceDistribution distribution = DiceDistribution.fair(1_000, 6);
+        double total = IntStream.rangeClosed(distribution.minTotal(), distribution.maxTotal())
+                .mapToDouble(distribution::probability).sum();
+
+        assertAll(() -> assertEquals(1, total, 1e-9),
+                () -> assertEquals(3_500, distribution.mean(), 1e-6),
+                () -> assertEquals(distribution.probability(3_400), distribution.probability(3_600),
+                        1e-12));
+    }
+
+    @Test
+    void invalidDice() {
+        assertThrows(IllegalArgumentException.class, () -> new Dice(0, 1, 1));
+    }
+
+    @Test
+    void batchInParallel() {
+        List<Dice> configurations = IntStream.rangeClosed(1, 200)
+                .mapToObj(count -> Dice.fair(count, 20)).collect(toList());
+
+        long start = System.currentTimeMillis();
+        List<DiceDistribution> distributions = DiceDistribution.ofAll(configurations);
+        System.out.println("200 distributions: " + (System.currentTimeMillis() - start) + " ms");
+
+        assertEquals(200, distributions.size());
+        assertEquals(200 * 10.5, distributions.get(199).mean(), 1e-6);
+    }
+}
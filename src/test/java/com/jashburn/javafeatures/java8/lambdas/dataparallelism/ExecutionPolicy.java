@@ -0,0 +1,95 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.BaseStream;
+
+/**
+ * Decides per stream pipeline whether to run it sequentially, in parallel on the common pool, or
+ * in parallel on a dedicated pool, instead of calling {@code parallel()} unconditionally.
+ * <p>
+ * The estimated work is the input size times an estimated cost per element:
+ * <ul>
+ * <li>below {@link #SEQUENTIAL_BELOW_NANOS}, or with a single core, the pipeline runs
+ * sequentially, since splitting and merging would cost more than they save</li>
+ * <li>from {@link #DEDICATED_FROM_NANOS}, it runs on the dedicated pool, so heavy jobs queue
+ * behind each other there rather than filling the common pool that every other parallel stream
+ * (and {@code CompletableFuture}) in the JVM uses</li>
+ * <li>otherwise, it runs in parallel on the common pool, unless that is saturated (all its
+ * threads busy with tasks waiting), in which case it runs sequentially on the calling thread
+ * rather than queue for the pool</li>
+ * </ul>
+ * A parallel stream whose terminal operation is started from within a fork/join pool runs in that
+ * pool, which is how pipelines are sent to the dedicated pool.
+ * <p>
+ * The JVM-wide dedicated pool of {@link #common()} has half as many threads as the common pool, so
+ * that with both pools busy the cores are oversubscribed by at most 1.5 to 1, rather than 2 to 1.
+ * The cost is that a heavy pipeline gets only half the cores even when the common pool is idle.
+ */
+public class ExecutionPolicy {
+
+    public enum Mode {
+        SEQUENTIAL, PARALLEL, DEDICATED
+    }
+
+    public static final long SEQUENTIAL_BELOW_NANOS = 100_000;
+    public static final long DEDICATED_FROM_NANOS = 500_000_000;
+
+    private static final ExecutionPolicy COMMON = new ExecutionPolicy(ForkJoinPool.commonPool(),
+            new ForkJoinPool(Math.max(1, ForkJoinPool.getCommonPoolParallelism() / 2)));
+
+    private final ForkJoinPool sharedPool;
+    private final ForkJoinPool dedicatedPool;
+
+    public ExecutionPolicy(ForkJoinPool sharedPool, ForkJoinPool dedicatedPool) {
+        this.sharedPool = sharedPool;
+        this.dedicatedPool = dedicatedPool;
+    }
+
+    /**
+     * @return the policy deciding between the common pool and a JVM-wide dedicated pool
+     */
+    public static ExecutionPolicy common() {
+        return COMMON;
+    }
+
+    /**
+     * @param size the number of elements in the pipeline's source
+     * @param nanosPerElement the estimated cost of processing each element
+     */
+    public Mode choose(long size, long nanosPerElement) {
+        double work = (double) size * nanosPerElement;
+        if (work < SEQUENTIAL_BELOW_NANOS || sharedPool.getParallelism() < 2) {
+            return Mode.SEQUENTIAL;
+        }
+        if (work >= DEDICATED_FROM_NANOS) {
+            return Mode.DEDICATED;
+        }
+        return isSaturated(sharedPool) ? Mode.SEQUENTIAL : Mode.PARALLEL;
+    }
+
+    /**
+     * Runs {@code terminal} on {@code stream}, made sequential or parallel as chosen.
+     *
+     * <pre>
+     * long primes = policy.run(IntStream.range(2, upTo), upTo - 2, costPerNumber,
+     *         numbers -> numbers.filter(this::isPrime).count());
+     * </pre>
+     */
+    public <S extends BaseStream<?, S>, R> R run(S stream, long size, long nanosPerElement,
+            Function<? super S, R> terminal) {
+        switch (choose(size, nanosPerElement)) {
+            case SEQUENTIAL:
+                return terminal.apply(stream.sequential());
+            case DEDICATED:
+                return dedicatedPool.submit(() -> terminal.apply(stream.parallel())).join();
+            default:
+                return terminal.apply(stream.parallel());
+        }
+    }
+
+    private static boolean isSaturated(ForkJoinPool pool) {
+        return pool.getActiveThreadCount() >= pool.getParallelism()
+                && pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount() > 0;
+    }
+}
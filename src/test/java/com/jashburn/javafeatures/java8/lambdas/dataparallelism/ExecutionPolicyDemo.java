@@ -0,0 +1,87 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+import com.jashburn.javafeatures.java8.lambdas.dataparallelism.ExecutionPolicy.Mode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ExecutionPolicyDemo {
+
+    private final ForkJoinPool sharedPool = new ForkJoinPool(2);
+    private final ForkJoinPool dedicatedPool = new ForkJoinPool(2);
+    private final ExecutionPolicy policy = new ExecutionPolicy(sharedPool, dedicatedPool);
+
+    @AfterEach
+    void shutDownPools() {
+        sharedPool.shutdownNow();
+        dedicatedPool.shutdownNow();
+    }
+
+    @Test
+    void choiceByEstimatedWork() {
+        assertAll(() -> assertEquals(Mode.SEQUENTIAL, policy.choose(4, 1_000)),
+                () -> assertEquals(Mode.SEQUENTIAL, policy.choose(10_000, 5)),
+                () -> assertEquals(Mode.PARALLEL, policy.choose(1_000_000, 5)),
+                () -> assertEquals(Mode.DEDICATED, policy.choose(100_000_000, 10)));
+    }
+
+    @Test
+    void singleCoreIsAlwaysSequential() {
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        try {
+            assertEquals(Mode.SEQUENTIAL,
+                    new ExecutionPolicy(singleThread, dedicatedPool).choose(1_000_000, 5));
+        } finally {
+            singleThread.shutdown();
+        }
+    }
+
+    /**
+     * With every shared pool thread blocked and more work queued behind them, medium pipelines
+     * run sequentially on the caller instead.
+     */
+    @Test
+    void saturatedPoolRunsSequentially() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 4; i++) {
+            sharedPool.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // Pool shut down at the end of the test
+                }
+            });
+        }
+        started.await();
+        try {
+            assertEquals(Mode.SEQUENTIAL, policy.choose(1_000_000, 5));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void dedicatedPipelinesRunInDedicatedPool() {
+        boolean inDedicatedPool = policy.run(IntStream.range(0, 100_000_000), 100_000_000, 10,
+                numbers -> ForkJoinTask.getPool() == dedicatedPool);
+
+        assertTrue(inDedicatedPool);
+    }
+
+    @Test
+    void sameResultWhicheverMode() {
+        for (long nanosPerElement : new long[] {1, 100, 10_000}) {
+            long sum = policy.run(IntStream.range(0, 100_000), 100_000, nanosPerElement,
+                    numbers -> numbers.asLongStream().sum());
+            assertEquals(4_999_950_000L, sum);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel prefix sums and moving averages over files of doubles, which may be much larger than
+ * the heap and than the 2<sup>31</sup> elements of an array. The file is processed in blocks of
+ * {@code blockLength} doubles, each mapped into memory only while a task works on it.
+ * <p>
+ * Prefix sums are a two-pass block scan:
+ * <ol>
+ * <li>the blocks are summed in parallel</li>
+ * <li>an exclusive scan of the block sums (one per block, so cheap) gives each block's starting
+ * offset</li>
+ * <li>the blocks are scanned in parallel from their offsets, writing to the mapped output</li>
+ * </ol>
+ * Moving averages reuse the block offsets of the first two steps: each block seeds its running
+ * window sum with the difference of the prefix sums at the two ends of its first window, each the
+ * offset of a block plus part of that block, then slides the window along, adding the doubles
+ * entering it and subtracting those leaving. So every double is read a bounded number of times,
+ * however long the window, and nothing larger than a block is mapped.
+ * <p>
+ * With {@code compensated}, all sums use Kahan summation, whose error does not grow with the
+ * number of values, at about twice the arithmetic. Doubles are read and written in big-endian
+ * order, as by {@code DataOutputStream}.
+ */
+class MappedPrefixScan {
+
+    static final int DEFAULT_BLOCK_LENGTH = 1 << 20;
+
+    private static final ByteOrder ORDER = ByteOrder.BIG_ENDIAN;
+
+    private final ForkJoinPool pool;
+    private final int blockLength;
+    private final boolean compensated;
+
+    MappedPrefixScan(boolean compensated) {
+        this(ForkJoinPool.commonPool(), DEFAULT_BLOCK_LENGTH, compensated);
+    }
+
+    MappedPrefixScan(ForkJoinPool pool, int blockLength, boolean compensated) {
+        if (blockLength < 1) {
+            throw new IllegalArgumentException("block length must be positive");
+        }
+        this.pool = pool;
+        this.blockLength = blockLength;
+        this.compensated = compensated;
+    }
+
+    /**
+     * Writes to {@code output} the cumulative sums of the doubles in {@code input}.
+     */
+    void prefixSums(Path input, Path output) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long length = in.size() / Double.BYTES;
+            try (FileChannel out = openOutput(output, length)) {
+                int blocks = blockCount(length);
+                double[][] offsets = blockOffsets(in, length);
+
+                run(blocks, block -> {
+                    DoubleBuffer values = read(in, block, length);
+                    DoubleBuffer sums = write(out, block, length);
+                    Sum sum = new Sum(offsets[block]);
+                    while (values.hasRemaining()) {
+                        sum.add(values.get());
+                        sums.put(sum.value());
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Writes to {@code output} the average of each {@code window} consecutive doubles in
+     * {@code input}: {@code length - window + 1} averages, the first for the window ending at
+     * index {@code window - 1}.
+     */
+    void movingAverages(Path input, Path output, int window) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long length = in.size() / Double.BYTES;
+            if (window < 1 || window > length) {
+                throw new IllegalArgumentException("window must be between 1 and " + length);
+            }
+            long averages = length - window + 1;
+            try (FileChannel out = openOutput(output, averages)) {
+                double[][] offsets = blockOffsets(in, length);
+
+                // Block b computes the averages of the windows ending in input block b
+                run(blockCount(length), block -> {
+                    long end = Math.min(length, (block + 1L) * blockLength);
+                    long firstWindowEnd = Math.max(window - 1, (long) block * blockLength);
+                    if (firstWindowEnd >= end) {
+                        return;
+                    }
+                    long firstWindowStart = firstWindowEnd - window + 1;
+                    long count = end - firstWindowEnd;
+                    DoubleBuffer entering = map(in, READ_ONLY, firstWindowEnd, count);
+                    DoubleBuffer leaving = map(in, READ_ONLY, firstWindowStart, count);
+                    DoubleBuffer result = map(out, READ_WRITE, firstWindowStart, count);
+
+                    // The first window, less its last double
+                    Sum sum = new Sum(prefixSum(in, offsets, firstWindowEnd));
+                    double[] before = prefixSum(in, offsets, firstWindowStart);
+                    sum.add(-before[0]);
+                    sum.add(before[1]);
+                    while (entering.hasRemaining()) {
+                        sum.add(entering.get());
+                        result.put(sum.value() / window);
+                        sum.add(-leaving.get());
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * @return for each block, the sum of all earlier blocks, as {sum, compensation}
+     */
+    private double[][] blockOffsets(FileChannel in, long length) throws IOException {
+        int blocks = blockCount(length);
+        double[][] blockSums = new double[blocks][];
+        run(blocks, block -> blockSums[block] = sum(read(in, block, length)));
+
+        double[][] offsets = new double[blocks][];
+        Sum running = new Sum();
+        for (int block = 0; block < blocks; block++) {
+            offsets[block] = running.toArray();
+            running.add(blockSums[block][0]);
+            running.add(-blockSums[block][1]);
+        }
+        return offsets;
+    }
+
+    /**
+     * @return {sum, compensation} of the doubles before {@code index}, from the offset of its
+     *         block and the doubles before it in the block
+     */
+    private double[] prefixSum(FileChannel in, double[][] offsets, long index) {
+        int block = (int) (index / blockLength);
+        long start = (long) block * blockLength;
+        Sum sum = new Sum(offsets[block]);
+        DoubleBuffer values = map(in, READ_ONLY, start, index - start);
+        while (values.hasRemaining()) {
+            sum.add(values.get());
+        }
+        return sum.toArray();
+    }
+
+    private int blockCount(long length) {
+        long blocks = (length + blockLength - 1) / blockLength;
+        if (blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many blocks: " + blocks);
+        }
+        return (int) blocks;
+    }
+
+    private DoubleBuffer read(FileChannel in, int block, long length) {
+        long start = (long) block * blockLength;
+        return map(in, READ_ONLY, start, Math.min(blockLength, length - start));
+    }
+
+    private DoubleBuffer write(FileChannel out, int block, long length) {
+        long start = (long) block * blockLength;
+        return map(out, READ_WRITE, start, Math.min(blockLength, length - start));
+    }
+
+    private static DoubleBuffer map(FileChannel channel, FileChannel.MapMode mode, long index,
+            long count) {
+        try {
+            return channel.map(mode, index * Double.BYTES, count * Double.BYTES).order(ORDER)
+                    .asDoubleBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static FileChannel openOutput(Path output, long length) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(output.toFile(), "rw")) {
+            file.setLength(length * Double.BYTES);
+        }
+        return FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void run(int blocks, IntConsumer task) throws IOException {
+        try {
+            pool.submit(() -> IntStream.range(0, blocks).parallel().forEach(task)).join();
+        } catch (UncheckedIOException e) {
+            // join() may rethrow a copy of the exception, with the original as its cause
+            Throwable cause = e.getCause();
+            throw cause instanceof UncheckedIOException
+                    ? ((UncheckedIOException) cause).getCause()
+                    : (IOException) cause;
+        }
+    }
+
+    /**
+     * @return {sum, compensation} of the remaining values
+     */
+    private double[] sum(DoubleBuffer values) {
+        Sum sum = new Sum();
+        while (values.hasRemaining()) {
+            sum.add(values.get());
+        }
+        return sum.toArray();
+    }
+
+    /**
+     * Running sum, Kahan-compensated if {@link #compensated}. The compensation is the rounding
+     * error lost so far, to be subtracted from the next value added.
+     */
+    private class Sum {
+
+        private double sum;
+        private double compensation;
+
+        Sum() {
+        }
+
+        Sum(double[] sumAndCompensation) {
+            sum = sumAndCompensation[0];
+            compensation = sumAndCompensation[1];
+        }
+
+        void add(double value) {
+            if (!compensated) {
+                sum += value;
+                return;
+            }
+            double corrected = value - compensation;
+            double next = sum + corrected;
+            compensation = (next - sum) - corrected;
+            sum = next;
+        }
+
+        double value() {
+            return sum;
+        }
+
+        double[] toArray() {
+            return new double[] {sum, compensation};
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedPrefixScanDemo {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * The {@link ParallelArray} example, with blocks of 2 so that it crosses block boundaries.
+     */
+    @Test
+    void smallSeries() throws IOException {
+        Path input = writeDoubles(0, 1, 2, 3, 4, 3.5);
+        MappedPrefixScan scan = new MappedPrefixScan(ForkJoinPool.commonPool(), 2, false);
+
+        scan.prefixSums(input, directory.resolve("sums"));
+        scan.movingAverages(input, directory.resolve("averages"), 3);
+
+        assertArrayEquals(new double[] {0, 1, 3, 6, 10, 13.5},
+                readDoubles(directory.resolve("sums")));
+        assertArrayEquals(new double[] {1, 2, 3, 3.5}, readDoubles(directory.resolve("averages")));
+    }
+
+    @Test
+    void matchesParallelPrefix() throws IOException {
+        double[] values = new SplittableRandom(5).doubles(100_003).toArray();
+        Path input = writeDoubles(values);
+        MappedPrefixScan scan = new MappedPrefixScan(ForkJoinPool.commonPool(), 4_096, false);
+
+        scan.prefixSums(input, directory.resolve("sums"));
+        double[] expected = values.clone();
+        Arrays.parallelPrefix(expected, Double::sum);
+
+        assertArrayEquals(expected, readDoubles(directory.resolve("sums")), 1e-6);
+    }
+
+    /**
+     * Windows longer than a block, and windows that start in one block and end in the next.
+     */
+    @Test
+    void movingAveragesAcrossBlocks() throws IOException {
+        double[] values = new SplittableRandom(6).doubles(10_000).toArray();
+        Path input = writeDoubles(values);
+        int window = 700;
+        new MappedPrefixScan(ForkJoinPool.commonPool(), 512, true).movingAverages(input,
+                directory.resolve("averages"), window);
+
+        double[] averages = readDoubles(directory.resolve("averages"));
+        assertEquals(values.length - window + 1, averages.length);
+        for (int i = 0; i < averages.length; i += 97) {
+            double expected = Arrays.stream(values, i, i + window).sum() / window;
+            assertEquals(expected, averages[i], 1e-12);
+        }
+    }
+
+    /**
+     * A window many blocks long: each block seeds its window from the block offsets, rather than
+     * by summing the whole window again.
+     */
+    @Test
+    void windowsSpanningManyBlocks() throws IOException {
+        double[] values = new SplittableRandom(8).doubles(5_000).toArray();
+        Path input = writeDoubles(values);
+        int window = 1_000;
+        new MappedPrefixScan(ForkJoinPool.commonPool(), 16, true).movingAverages(input,
+                directory.resolve("averages"), window);
+
+        double[] averages = readDoubles(directory.resolve("averages"));
+        double[] expected = new double[values.length - window + 1];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = Arrays.stream(values, i, i + window).sum() / window;
+        }
+        assertArrayEquals(expected, averages, 1e-12);
+    }
+
+    /**
+     * Adding 0.1 ten million times: plain summation drifts, compensated summation does not.
+     */
+    @Test
+    void compensatedSummation() throws IOException {
+        double[] values = new double[10_000_000];
+        Arrays.fill(values, 0.1);
+        Path input = writeDoubles(values);
+
+        new MappedPrefixScan(false).prefixSums(input, directory.resolve("plain"));
+        new MappedPrefixScan(true).prefixSums(input, directory.resolve("compensated"));
+
+        double exact = 1_000_000;
+        double plainError = Math.abs(lastDouble(directory.resolve("plain")) - exact);
+        double compensatedError = Math.abs(lastDouble(directory.resolve("compensated")) - exact);
+        System.out.println("Prefix sum error: plain " + plainError + ", compensated "
+                + compensatedError);
+        assertTrue(compensatedError < 1e-9);
+        assertTrue(plainError > compensatedError);
+    }
+
+    @Test
+    void throughput() throws IOException {
+        Path input = writeDoubles(new SplittableRandom(7).doubles(16_000_000).toArray());
+        MappedPrefixScan scan = new MappedPrefixScan(true);
+
+        long start = System.nanoTime();
+        scan.prefixSums(input, directory.resolve("sums"));
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("Compensated prefix sums: %.0f MB/s%n",
+                Files.size(input) * 1e3 / nanos);
+    }
+
+    @Test
+    void invalidWindow() throws IOException {
+        Path input = writeDoubles(1, 2, 3);
+
+        assertThrows(IllegalArgumentException.class, () -> new MappedPrefixScan(false)
+                .movingAverages(input, directory.resolve("averages"), 4));
+    }
+
+    private Path writeDoubles(double... values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES);
+        buffer.asDoubleBuffer().put(values);
+        return Files.write(Files.createTempFile(directory, "values", ""), buffer.array());
+    }
+
+    private static double[] readDoubles(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        double[] values = new double[bytes.length / Double.BYTES];
+        ByteBuffer.wrap(bytes).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    private static double lastDouble(Path file) throws IOException {
+        double[] values = readDoubles(file);
+        return values[values.length - 1];
+    }
+}
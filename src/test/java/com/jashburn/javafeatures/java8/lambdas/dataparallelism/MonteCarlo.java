@@ -0,0 +1,222 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections.IntDoubleMap;
+import com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections.IntLongMap;
+
+/**
+ * Parallel Monte Carlo engine that counts the {@code int} outcomes of a trial into a histogram,
+ * without allocating per trial.
+ * <ul>
+ * <li>the trials are split into a fixed tree of fork/join tasks; each leaf runs its trials into
+ * its own primitive histogram, so leaves share nothing while running, and the histograms are
+ * merged on the way back up</li>
+ * <li>each task {@link SplittableRandom#split() splits} its random number generator for its
+ * right-hand half before forking, so the same seed gives the same histogram however the tasks
+ * are scheduled</li>
+ * <li>outcomes in {@code [0, DENSE_OUTCOMES)} are counted in a {@code long[]}, others in an
+ * {@link IntLongMap}</li>
+ * </ul>
+ */
+class MonteCarlo {
+
+    /**
+     * A single trial, returning its outcome. Must only use {@code random} for randomness.
+     */
+    @FunctionalInterface
+    interface Trial {
+        int run(SplittableRandom random);
+    }
+
+    /**
+     * z-score for a 95% confidence interval.
+     */
+    static final double Z_95 = 1.959964;
+
+    private static final int DENSE_OUTCOMES = 256;
+    private static final long MIN_LEAF_TRIALS = 1 << 14;
+    private static final int TARGET_LEAVES = 1024;
+
+    private final ForkJoinPool pool;
+
+    MonteCarlo() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    MonteCarlo(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    Result run(Trial trial, long trials, long seed) {
+        if (trials <= 0) {
+            throw new IllegalArgumentException("trials must be positive: " + trials);
+        }
+        // Depends only on the number of trials, so that results are reproducible across machines
+        long leafTrials = Math.max(MIN_LEAF_TRIALS, trials / TARGET_LEAVES);
+        SplittableRandom random = new SplittableRandom(seed);
+        IntLongMap counts = pool.invoke(new TrialTask(trial, 0, trials, leafTrials, random));
+        return new Result(counts, trials);
+    }
+
+    private static class TrialTask extends RecursiveTask<IntLongMap> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Trial trial;
+        private final long from;
+        private final long to;
+        private final long leafTrials;
+        private final SplittableRandom random;
+
+        TrialTask(Trial trial, long from, long to, long leafTrials, SplittableRandom random) {
+            this.trial = trial;
+            this.from = from;
+            this.to = to;
+            this.leafTrials = leafTrials;
+            this.random = random;
+        }
+
+        @Override
+        protected IntLongMap compute() {
+            if (to - from <= leafTrials) {
+                return runLeaf();
+            }
+            long middle = from + (to - from) / 2;
+            TrialTask right = new TrialTask(trial, middle, to, leafTrials, random.split());
+            right.fork();
+            IntLongMap counts = new TrialTask(trial, from, middle, leafTrials, random).compute();
+            counts.addAll(right.join());
+            return counts;
+        }
+
+        private IntLongMap runLeaf() {
+            long[] dense = new long[DENSE_OUTCOMES];
+            IntLongMap counts = new IntLongMap();
+            for (long i = from; i < to; i++) {
+                int outcome = trial.run(random);
+                if (outcome >= 0 && outcome < DENSE_OUTCOMES) {
+                    dense[outcome]++;
+                } else {
+                    counts.addTo(outcome, 1);
+                }
+            }
+            for (int outcome = 0; outcome < DENSE_OUTCOMES; outcome++) {
+                if (dense[outcome] != 0) {
+                    counts.addTo(outcome, dense[outcome]);
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Histogram of outcomes, with estimates derived from it.
+     */
+    static class Result {
+
+        private final IntLongMap counts;
+        private final long trials;
+
+        Result(IntLongMap counts, long trials) {
+            this.counts = counts;
+            this.trials = trials;
+        }
+
+        long trials() {
+            return trials;
+        }
+
+        long count(int outcome) {
+            return counts.get(outcome, 0);
+        }
+
+        double probability(int outcome) {
+            return (double) count(outcome) / trials;
+        }
+
+        IntDoubleMap probabilities() {
+            IntDoubleMap probabilities = new IntDoubleMap(counts.size());
+            counts.forEach((outcome, count) -> probabilities.put(outcome, (double) count / trials));
+            return probabilities;
+        }
+
+        /**
+         * Wilson score interval for the probability of {@code outcome}, which stays inside [0, 1]
+         * and is sensible for rare outcomes, unlike the normal approximation.
+         */
+        Interval probabilityInterval(int outcome, double z) {
+            double p = probability(outcome);
+            double z2n = z * z / trials;
+            double centre = (p + z2n / 2) / (1 + z2n);
+            double halfWidth =
+                    z * Math.sqrt(p * (1 - p) / trials + z2n / (4.0 * trials)) / (1 + z2n);
+            return new Interval(centre - halfWidth, centre + halfWidth);
+        }
+
+        double mean() {
+            double[] sum = new double[1];
+            counts.forEach((outcome, count) -> sum[0] += (double) outcome * count);
+            return sum[0] / trials;
+        }
+
+        /**
+         * Sample variance of the outcomes, which needs at least two trials.
+         */
+        double variance() {
+            if (trials < 2) {
+                throw new IllegalStateException("variance needs at least 2 trials: " + trials);
+            }
+            double mean = mean();
+            double[] sumOfSquares = new double[1];
+            counts.forEach((outcome, count) -> {
+                double deviation = outcome - mean;
+                sumOfSquares[0] += deviation * deviation * count;
+            });
+            return sumOfSquares[0] / (trials - 1);
+        }
+
+        /**
+         * Normal approximation interval for the mean outcome.
+         */
+        Interval meanInterval(double z) {
+            double mean = mean();
+            double halfWidth = z * Math.sqrt(variance() / trials);
+            return new Interval(mean - halfWidth, mean + halfWidth);
+        }
+
+        @Override
+        public String toString() {
+            return trials + " trials: " + counts;
+        }
+    }
+
+    static class Interval {
+
+        private final double lower;
+        private final double upper;
+
+        Interval(double lower, double upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        double lower() {
+            return lower;
+        }
+
+        double upper() {
+            return upper;
+        }
+
+        boolean contains(double value) {
+            return lower <= value && value <= upper;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%.6f, %.6f]", lower, upper);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+class MonteCarloDemo {
+
+    private static final MonteCarlo.Trial TWO_DICE =
+            random -> random.nextInt(1, 7) + random.nextInt(1, 7);
+
+    /**
+     * The same seed gives the same histogram, whatever the number of threads.
+     */
+    @Test
+    void reproducibleAcrossPools() {
+        MonteCarlo.Result common = new MonteCarlo().run(TWO_DICE, 2_000_000, 7);
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        try {
+            MonteCarlo.Result sequential = new MonteCarlo(singleThread).run(TWO_DICE, 2_000_000, 7);
+            for (int total = 2; total <= 12; total++) {
+                assertEquals(common.count(total), sequential.count(total));
+            }
+        } finally {
+            singleThread.shutdown();
+        }
+    }
+
+    /**
+     * A 95% interval should miss the true probability in about 1 run in 20, so over 40 seeds
+     * expect roughly 38 hits.
+     */
+    @Test
+    void probabilityIntervalCoverage() {
+        int hits = 0;
+        for (long seed = 0; seed < 40; seed++) {
+            MonteCarlo.Result result = new MonteCarlo().run(TWO_DICE, 100_000, seed);
+            if (result.probabilityInterval(12, MonteCarlo.Z_95).contains(1.0 / 36)) {
+                hits++;
+            }
+        }
+        System.out.println("95% interval covered the true probability in " + hits + " of 40 runs");
+        assertTrue(hits >= 33, () -> "too few hits");
+    }
+
+    /**
+     * Outcomes outside the dense range, including negative ones, go to the map.
+     */
+    @Test
+    void sparseOutcomesAndMean() {
+        MonteCarlo.Result result = new MonteCarlo()
+                .run(random -> random.nextBoolean() ? -1_000 : 1_000_000, 1_000_000, 3);
+        MonteCarlo.Interval meanInterval = result.meanInterval(MonteCarlo.Z_95);
+
+        assertAll(() -> assertEquals(1_000_000, result.count(-1_000) + result.count(1_000_000)),
+                () -> assertEquals(0.5, result.probability(-1_000), 0.002),
+                () -> assertTrue(meanInterval.contains(499_500), meanInterval::toString));
+    }
+
+    @Test
+    void invalidTrials() {
+        assertThrows(IllegalArgumentException.class, () -> new MonteCarlo().run(TWO_DICE, 0, 1));
+    }
+
+    /**
+     * One trial gives a mean, but no spread to estimate the variance (or a mean interval) from.
+     */
+    @Test
+    void singleTrial() {
+        MonteCarlo.Result result = new MonteCarlo().run(random -> 7, 1, 1);
+
+        assertAll(() -> assertEquals(7, result.mean()),
+                () -> assertThrows(IllegalStateException.class, result::variance),
+                () -> assertThrows(IllegalStateException.class,
+                        () -> result.meanInterval(MonteCarlo.Z_95)));
+    }
+
+    /**
+     * Trials per second compared with the boxing {@code groupingBy} version in {@link Simulations}.
+     */
+    @Test
+    void throughput() {
+        long trials = 50_000_000;
+        new MonteCarlo().run(TWO_DICE, trials / 10, 1); // Warm up
+
+        long start = System.nanoTime();
+        new MonteCarlo().run(TWO_DICE, trials, 1);
+        long engineNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Map<Integer, Long> boxed = LongStream.range(0, trials).parallel().mapToObj(i -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return random.nextInt(1, 7) + random.nextInt(1, 7);
+        }).collect(Collectors.groupingBy(total -> total, Collectors.counting()));
+        long boxedNanos = System.nanoTime() - start;
+
+        assertEquals(11, boxed.size());
+        System.out.printf("MonteCarlo: %.0f M trials/s, groupingBy: %.0f M trials/s%n",
+                trials * 1e3 / engineNanos, trials * 1e3 / boxedNanos);
+    }
+}
@@ -28,6 +28,25 @@ public class ParallelArray {
         assertArrayEquals(new double[] {1, 2, 3, 3.5}, movingAverages);
     }
 
+    /**
+     * Same moving averages, computed incrementally as each value arrives, without the prefix-sum
+     * copy of the whole series.
+     */
+    @Test
+    void slidingWindowMovingAverage() {
+        double[] values = {0, 1, 2, 3, 4, 3.5};
+        final int windowLength = 3;
+        SlidingWindowAggregator aggregator = new SlidingWindowAggregator(windowLength);
+        SlidingWindowAggregator.Window window = aggregator.window(windowLength);
+
+        double[] movingAverages = Arrays.stream(values).map(value -> {
+            aggregator.add(value);
+            return window.isFull() ? window.average() : Double.NaN;
+        }).filter(average -> !Double.isNaN(average)).toArray();
+
+        assertArrayEquals(new double[] {1, 2, 3, 3.5}, movingAverages);
+    }
+
     private boolean isFirstValue(final int startInt, final int integer) {
         return integer == startInt;
     }
@@ -5,6 +5,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections.IntList;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -14,12 +15,16 @@ class Performance {
 
     private static List<Integer> arrayList = new ArrayList<>();
     private static List<Integer> linkedList = new LinkedList<>();
+    private static List<Integer> chunkedList = new ChunkedList<>();
+    private static IntList intList = new IntList(LIST_LENGTH);
 
     @BeforeAll
     static void setUpLists() {
         List<Integer> list = IntStream.range(0, LIST_LENGTH).boxed().collect(Collectors.toList());
         arrayList.addAll(list);
         linkedList.addAll(list);
+        chunkedList.addAll(list);
+        IntStream.range(0, LIST_LENGTH).forEach(intList::add);
     }
 
     @Test
@@ -36,6 +41,27 @@ class Performance {
         System.out.println("LinkedList: " + (System.currentTimeMillis() - start));
     }
 
+    /**
+     * Splits as evenly as an {@code ArrayList}, but inserts in the middle cheaply, like a
+     * {@code LinkedList}.
+     */
+    @Test
+    void addIntegersChunkedList() {
+        long start = System.currentTimeMillis();
+        addIntegers(chunkedList);
+        System.out.println("ChunkedList: " + (System.currentTimeMillis() - start));
+    }
+
+    /**
+     * No unboxing, and the elements are contiguous in memory.
+     */
+    @Test
+    void addIntegersIntList() {
+        long start = System.currentTimeMillis();
+        intList.stream().parallel().sum();
+        System.out.println("IntList: " + (System.currentTimeMillis() - start));
+    }
+
     private int addIntegers(List<Integer> values) {
         return values.parallelStream().mapToInt(i -> i).sum();
     }
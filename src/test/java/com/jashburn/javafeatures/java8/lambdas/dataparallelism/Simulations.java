@@ -2,6 +2,7 @@ package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
@@ -38,6 +39,37 @@ class Simulations {
         });
     }
 
+    /**
+     * Same simulation, with {@link MonteCarlo} counting into primitive histograms instead of boxing
+     * each roll through {@code groupingBy}.
+     */
+    @Test
+    void parallelDiceRollsMonteCarlo() {
+        MonteCarlo.Result result = new MonteCarlo()
+                .run(random -> random.nextInt(1, 7) + random.nextInt(1, 7), REPETITIONS, 42);
+
+        result.probabilities().forEach((key, value) -> {
+            assertEquals(expectedProbability(key), value, 0.001,
+                    () -> String.format("Abnormal probability for %d", key));
+        });
+        assertTrue(result.probabilityInterval(7, MonteCarlo.Z_95).contains(expectedProbability(7)));
+    }
+
+    /**
+     * Checks a five-dice simulation against the exact distribution, which takes far less time than
+     * the simulation itself.
+     */
+    @Test
+    void fiveDiceSimulationAgainstExactDistribution() {
+        DiceDistribution exact = DiceDistribution.fair(5, 6);
+        MonteCarlo.Result result = new MonteCarlo().run(random -> IntStream.range(0, 5)
+                .map(die -> random.nextInt(1, 7)).sum(), REPETITIONS, 42);
+
+        for (int total = exact.minTotal(); total <= exact.maxTotal(); total++) {
+            assertEquals(exact.probability(total), result.probability(total), 0.001);
+        }
+    }
+
     @Test
     void expectedProbabilityTest() {
         double single = 1.0 / 36.0;
@@ -48,6 +80,11 @@ class Simulations {
                 () -> assertEquals(5 * single, expectedProbability(8), 0.001, "8"),
                 () -> assertEquals(3 * single, expectedProbability(10), 0.001, "10"),
                 () -> assertEquals(single, expectedProbability(12), 0.001, "12"));
+
+        DiceDistribution exact = DiceDistribution.fair(2, 6);
+        for (int total = 2; total <= 12; total++) {
+            assertEquals(exact.probability(total), expectedProbability(total), 1e-12);
+        }
     }
 
     /**
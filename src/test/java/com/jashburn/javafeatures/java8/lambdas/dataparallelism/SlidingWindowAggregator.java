@@ -0,0 +1,222 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import java.util.Arrays;
+
+/**
+ * Moving sum, average, min and max of an unbounded series, for several window lengths at once.
+ * Points are added one at a time, in O(1) amortised time per window, and only about the last
+ * {@code max(windowLengths)} points are kept.
+ * <ul>
+ * <li>the points are kept in a ring buffer shared by all windows</li>
+ * <li>each window keeps a running sum, recomputed from the buffer every time the window has moved
+ * along by its whole length, so rounding error cannot build up over an unbounded series</li>
+ * <li>each window keeps its min and max candidates in monotonic deques of point positions: a new
+ * point removes the candidates it beats from the back, and the front drops off as it leaves the
+ * window</li>
+ * </ul>
+ * Not thread-safe.
+ */
+class SlidingWindowAggregator {
+
+    private final double[] points;
+    private final Window[] windows;
+    private long count;
+    private int slot; // Index in points of the next point
+
+    SlidingWindowAggregator(int... windowLengths) {
+        if (windowLengths.length == 0) {
+            throw new IllegalArgumentException("no window lengths");
+        }
+        windows = new Window[windowLengths.length];
+        for (int i = 0; i < windowLengths.length; i++) {
+            if (windowLengths[i] < 1) {
+                throw new IllegalArgumentException("window length must be positive");
+            }
+            windows[i] = new Window(windowLengths[i]);
+        }
+        // One spare slot, so the point leaving the longest window is still there when it is added
+        points = new double[Arrays.stream(windowLengths).max().getAsInt() + 1];
+    }
+
+    void add(double value) {
+        long position = count++;
+        points[slot] = value;
+        for (Window window : windows) {
+            window.add(position, slot, value);
+        }
+        if (++slot == points.length) {
+            slot = 0;
+        }
+    }
+
+    void addAll(double... values) {
+        for (double value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * @return the number of points added so far
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code length} is not one of the window lengths
+     */
+    Window window(int length) {
+        for (Window window : windows) {
+            if (window.length == length) {
+                return window;
+            }
+        }
+        throw new IllegalArgumentException("no window of length " + length);
+    }
+
+    /**
+     * @return the point {@code back} points before the one in {@code slot}
+     */
+    private double pointBefore(int slot, int back) {
+        int index = slot - back;
+        return points[index < 0 ? index + points.length : index];
+    }
+
+    /**
+     * Aggregates over the last {@link #length()} points, or all points until there are that many.
+     */
+    class Window {
+
+        private final int length;
+        private final MonotonicDeque minimums;
+        private final MonotonicDeque maximums;
+        private double sum;
+        private int sinceRecompute;
+
+        private Window(int length) {
+            this.length = length;
+            minimums = new MonotonicDeque(true);
+            maximums = new MonotonicDeque(false);
+        }
+
+        private void add(long position, int slot, double value) {
+            if (position >= length) {
+                sum -= pointBefore(slot, length);
+            }
+            sum += value;
+            if (++sinceRecompute == length) {
+                recomputeSum(slot);
+                sinceRecompute = 0;
+            }
+            minimums.add(position, value);
+            maximums.add(position, value);
+        }
+
+        private void recomputeSum(int lastSlot) {
+            double exact = 0;
+            for (int back = 0; back < length; back++) {
+                exact += pointBefore(lastSlot, back);
+            }
+            sum = exact;
+        }
+
+        int length() {
+            return length;
+        }
+
+        /**
+         * @return the number of points in the window
+         */
+        int size() {
+            return (int) Math.min(count, length);
+        }
+
+        boolean isFull() {
+            return count >= length;
+        }
+
+        double sum() {
+            return sum;
+        }
+
+        /**
+         * @return the average, or {@code NaN} if no points have been added
+         */
+        double average() {
+            return sum / size();
+        }
+
+        /**
+         * @return the minimum, or {@code NaN} if no points have been added
+         */
+        double min() {
+            return minimums.front();
+        }
+
+        /**
+         * @return the maximum, or {@code NaN} if no points have been added
+         */
+        double max() {
+            return maximums.front();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("window %d: sum=%f, average=%f, min=%f, max=%f", length, sum(),
+                    average(), min(), max());
+        }
+
+        /**
+         * Points (with their positions) that are still candidates for the window's min (or max),
+         * with the current one at the front. Held in rings of {@code length}, which is enough
+         * because all of them are inside the window.
+         */
+        private class MonotonicDeque {
+
+            private final boolean minimum;
+            private final long[] positions = new long[length];
+            private final double[] values = new double[length];
+            private int head;
+            private int tail; // Index after the back
+            private int size;
+
+            MonotonicDeque(boolean minimum) {
+                this.minimum = minimum;
+            }
+
+            void add(long position, double value) {
+                if (size > 0 && positions[head] <= position - length) {
+                    head = next(head);
+                    size--;
+                }
+                while (size > 0 && !beats(values[previous(tail)], value)) {
+                    tail = previous(tail);
+                    size--;
+                }
+                positions[tail] = position;
+                values[tail] = value;
+                tail = next(tail);
+                size++;
+            }
+
+            private int next(int index) {
+                return index + 1 == length ? 0 : index + 1;
+            }
+
+            private int previous(int index) {
+                return (index == 0 ? length : index) - 1;
+            }
+
+            /**
+             * @return whether a candidate survives a newer value, which it must strictly beat
+             */
+            private boolean beats(double candidate, double value) {
+                return minimum ? candidate < value : candidate > value;
+            }
+
+            double front() {
+                return size == 0 ? Double.NaN : values[head];
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.jashburn.javafeatures.java8.lambdas.dataparallelism;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowAggregatorDemo {
+
+    @Test
+    void partialAndFullWindows() {
+        SlidingWindowAggregator aggregator = new SlidingWindowAggregator(3, 5);
+        aggregator.addAll(4, 1, 3);
+        SlidingWindowAggregator.Window three = aggregator.window(3);
+        SlidingWindowAggregator.Window five = aggregator.window(5);
+
+        assertAll(() -> assertTrue(three.isFull()),
+                () -> assertFalse(five.isFull()),
+                () -> assertEquals(8, five.sum()),
+                () -> assertEquals(3, five.size()));
+
+        aggregator.addAll(2, 5);
+        assertAll(() -> assertEquals(10, three.sum()),
+                () -> assertEquals(2, three.min()),
+                () -> assertEquals(5, three.max()),
+                () -> assertEquals(3, five.average()),
+                () -> assertEquals(1, five.min()));
+    }
+
+    @Test
+    void emptyAndInvalid() {
+        SlidingWindowAggregator aggregator = new SlidingWindowAggregator(4);
+
+        assertAll(() -> assertTrue(Double.isNaN(aggregator.window(4).min())),
+                () -> assertThrows(IllegalArgumentException.class, () -> aggregator.window(5)),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new SlidingWindowAggregator(0)));
+    }
+
+    /**
+     * Compares every window after every point against a brute-force calculation over a copy of
+     * the series.
+     */
+    @Test
+    void matchesBruteForce() {
+        int[] lengths = {1, 7, 50, 333};
+        SlidingWindowAggregator aggregator = new SlidingWindowAggregator(lengths);
+        SplittableRandom random = new SplittableRandom(11);
+        double[] series = new double[5_000];
+
+        for (int i = 0; i < series.length; i++) {
+            // A trend with repeats, to exercise ties in the deques
+            series[i] = Math.floor(random.nextDouble() * 20) + i * 0.01;
+            aggregator.add(series[i]);
+            for (int length : lengths) {
+                double[] window = Arrays.copyOfRange(series, Math.max(0, i + 1 - length), i + 1);
+                SlidingWindowAggregator.Window actual = aggregator.window(length);
+                assertEquals(Arrays.stream(window).sum(), actual.sum(), 1e-9);
+                assertEquals(Arrays.stream(window).min().getAsDouble(), actual.min());
+                assertEquals(Arrays.stream(window).max().getAsDouble(), actual.max());
+            }
+        }
+    }
+
+    /**
+     * The running sum is recomputed as the window moves, so a tiny value next to huge ones is not
+     * lost for good.
+     */
+    @Test
+    void noDriftAfterLargeValues() {
+        SlidingWindowAggregator aggregator = new SlidingWindowAggregator(10);
+        aggregator.addAll(1e17, -1e17, 1e17);
+        for (int i = 0; i < 20; i++) {
+            aggregator.add(0.5);
+        }
+
+        assertEquals(5, aggregator.window(10).sum());
+    }
+
+    @Test
+    void throughput() {
+        SlidingWindowAggregator aggregator = new SlidingWindowAggregator(60, 300, 3_600);
+        SplittableRandom random = new SplittableRandom(1);
+        int points = 20_000_000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < points; i++) {
+            aggregator.add(random.nextDouble());
+        }
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("%.1f ns per point for 3 windows%n", (double) nanos / points);
+        assertEquals(0.5, aggregator.window(3_600).average(), 0.05);
+    }
+}
@@ -0,0 +1,87 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.singleresponsibilityprinciple;
+
+import java.util.stream.LongStream;
+
+/**
+ * Counts the primes below a number, replacing the trial division in {@link CountPrimes}.
+ * <ul>
+ * <li>up to {@link #SIEVE_LIMIT}, with a {@link SegmentedSieve}, whose segments are sieved and
+ * counted in parallel on the fork/join common pool: O(n log log n) work in all</li>
+ * <li>above it, with the Lucy_Hedgehog variant of the Legendre/Meissel method, which counts
+ * without finding the primes in O(n<sup>3/4</sup>) time and O(n<sup>1/2</sup>) space</li>
+ * </ul>
+ */
+class PrimeCounter {
+
+    static final long SIEVE_LIMIT = 100_000_000;
+
+    /**
+     * @return the number of primes below {@code upTo}
+     */
+    long countBelow(long upTo) {
+        return upTo <= SIEVE_LIMIT ? countBelowBySieve(upTo) : countBelowByLucy(upTo);
+    }
+
+    long countBelowBySieve(long upTo) {
+        if (upTo <= 2) {
+            return 0;
+        }
+        SegmentedSieve sieve = new SegmentedSieve(upTo);
+        long oddPrimes = LongStream.range(0, SegmentedSieve.segmentCount(upTo)).parallel()
+                .map(segment -> {
+                    long[] composite = new long[SegmentedSieve.SEGMENT_WORDS];
+                    sieve.sieve(segment, composite);
+                    return SegmentedSieve.countPrimes(segment, composite, upTo);
+                }).sum();
+        return oddPrimes + 1; // 2
+    }
+
+    /**
+     * Lucy_Hedgehog's algorithm for pi(m), with m = upTo - 1. S(v) starts as the count of numbers
+     * in [2, v] and, after each prime p, has the multiples of p whose smallest prime factor is p
+     * removed; only the O(sqrt(m)) values v = m / i are ever needed:
+     * <ul>
+     * <li>{@code small[v]} holds S(v) for v up to sqrt(m)</li>
+     * <li>{@code large[i]} holds S(m / i)</li>
+     * </ul>
+     */
+    long countBelowByLucy(long upTo) {
+        long m = upTo - 1;
+        if (m < 2) {
+            return 0;
+        }
+        int root = (int) Math.sqrt((double) m);
+        while ((long) (root + 1) * (root + 1) <= m) {
+            root++;
+        }
+        while ((long) root * root > m) {
+            root--;
+        }
+
+        long[] small = new long[root + 1];
+        long[] large = new long[root + 1];
+        for (int v = 1; v <= root; v++) {
+            small[v] = v - 1;
+            large[v] = m / v - 1;
+        }
+
+        for (int p = 2; p <= root; p++) {
+            if (small[p] == small[p - 1]) {
+                continue; // Not prime
+            }
+            long primesBelow = small[p - 1];
+            long square = (long) p * p;
+
+            long lastLarge = Math.min(root, m / square);
+            for (int i = 1; i <= lastLarge; i++) {
+                long ip = (long) i * p;
+                long quotient = ip <= root ? large[(int) ip] : small[(int) (m / ip)];
+                large[i] -= quotient - primesBelow;
+            }
+            for (int v = root; v >= square; v--) {
+                small[v] -= small[v / p] - primesBelow;
+            }
+        }
+        return large[1];
+    }
+}
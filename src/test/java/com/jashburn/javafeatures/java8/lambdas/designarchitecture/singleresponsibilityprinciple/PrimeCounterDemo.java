@@ -0,0 +1,58 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.singleresponsibilityprinciple;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class PrimeCounterDemo {
+
+    private final PrimeCounter counter = new PrimeCounter();
+
+    @Test
+    void smallBounds() {
+        assertAll(() -> assertEquals(0, counter.countBelow(0)),
+                () -> assertEquals(0, counter.countBelow(2)),
+                () -> assertEquals(1, counter.countBelow(3)),
+                () -> assertEquals(2, counter.countBelow(4)),
+                () -> assertEquals(0, counter.countBelowByLucy(2)),
+                () -> assertEquals(1, counter.countBelowByLucy(3)));
+    }
+
+    /**
+     * Both methods agree with each other and with trial division, around segment boundaries too.
+     */
+    @Test
+    void sieveAndLucyAgree() {
+        CountPrimes trialDivision = new CountPrimes();
+        IntStream.rangeClosed(0, 2_000).forEach(upTo -> assertEquals(
+                trialDivision.countPrimesSingleResp(upTo), counter.countBelowBySieve(upTo)));
+
+        long boundary = SegmentedSieve.SEGMENT_NUMBERS;
+        for (long upTo : new long[] {boundary - 1, boundary, boundary + 1, 3 * boundary + 7,
+                10_000_019}) {
+            assertEquals(counter.countBelowBySieve(upTo), counter.countBelowByLucy(upTo),
+                    () -> "pi below " + upTo);
+        }
+    }
+
+    @Test
+    void powersOfTen() {
+        assertAll(() -> assertEquals(78_498, counter.countBelowBySieve(1_000_000)),
+                () -> assertEquals(5_761_455, counter.countBelowBySieve(100_000_000)),
+                () -> assertEquals(50_847_534, counter.countBelow(1_000_000_000)),
+                () -> assertEquals(455_052_511, counter.countBelow(10_000_000_000L)));
+    }
+
+    @Test
+    void timing() {
+        long start = System.currentTimeMillis();
+        counter.countBelowBySieve(100_000_000);
+        System.out.println("Sieve below 10^8: " + (System.currentTimeMillis() - start) + " ms");
+
+        start = System.currentTimeMillis();
+        long count = counter.countBelow(1_000_000_000_000L);
+        System.out.println("Lucy below 10^12: " + (System.currentTimeMillis() - start) + " ms");
+        assertEquals(37_607_912_018L, count);
+    }
+}
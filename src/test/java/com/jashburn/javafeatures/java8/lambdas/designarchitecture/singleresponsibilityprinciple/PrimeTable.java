@@ -0,0 +1,251 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.singleresponsibilityprinciple;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Table of the primes below a limit, sieved once into a file and memory-mapped from then on, for
+ * prime tests, prime counts and enumeration over ranges.
+ * <p>
+ * The file holds, after a header:
+ * <ul>
+ * <li>checkpoints: for every {@link #CHECKPOINT_WORDS} words of the bitset (a 64-byte cache line),
+ * the number of odd primes before them</li>
+ * <li>a bitset of the odd numbers, with bit {@code i} set if {@code 2i + 1} is prime: 1 bit per
+ * 2 numbers, so 1 GB covers the numbers up to 1.6 * 10<sup>10</sup></li>
+ * </ul>
+ * {@link #pi(long)} is a checkpoint read plus at most 8 word bit counts. The whole file is mapped
+ * as one buffer, so it must be under 2 GB. Reads are thread-safe.
+ */
+class PrimeTable {
+
+    static final int CHECKPOINT_WORDS = 8;
+
+    private static final long MAGIC = 0x5052494D45544142L; // "PRIMETAB"
+    private static final int HEADER_LONGS = 4;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final long limit;
+    private final LongBuffer checkpoints;
+    private final LongBuffer words;
+
+    private PrimeTable(MappedByteBuffer buffer) throws IOException {
+        LongBuffer longs = buffer.order(ORDER).asLongBuffer();
+        if (longs.limit() < HEADER_LONGS || longs.get(0) != MAGIC) {
+            throw new IOException("not a prime table");
+        }
+        limit = longs.get(1);
+        long wordCount = longs.get(2);
+        long checkpointCount = longs.get(3);
+        // The counts must be those build writes for the limit, and the file must hold them all
+        if (limit < 2 || wordCount != (limit / 2 + 63) / 64
+                || checkpointCount != wordCount / CHECKPOINT_WORDS + 1
+                || longs.limit() < HEADER_LONGS + checkpointCount + wordCount) {
+            throw new IOException("prime table truncated or corrupt");
+        }
+        checkpoints = longs.slice(HEADER_LONGS, (int) checkpointCount);
+        words = longs.slice(HEADER_LONGS + (int) checkpointCount, (int) wordCount);
+    }
+
+    /**
+     * Sieves the primes below {@code limit} in parallel into {@code file}, replacing it.
+     */
+    static PrimeTable build(Path file, long limit) throws IOException {
+        if (limit < 2) {
+            throw new IllegalArgumentException("limit must be at least 2");
+        }
+        long bitCount = limit / 2;
+        long wordCount = (bitCount + 63) / 64;
+        long checkpointCount = wordCount / CHECKPOINT_WORDS + 1;
+        long bytes = (HEADER_LONGS + checkpointCount + wordCount) * Long.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("table for " + limit + " would exceed 2 GB");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, bytes);
+            LongBuffer longs = buffer.order(ORDER).asLongBuffer();
+            LongBuffer checkpoints = longs.slice(HEADER_LONGS, (int) checkpointCount);
+            LongBuffer words = longs.slice(HEADER_LONGS + (int) checkpointCount, (int) wordCount);
+
+            SegmentedSieve sieve = new SegmentedSieve(limit);
+            LongStream.range(0, SegmentedSieve.segmentCount(limit)).parallel().forEach(segment -> {
+                long[] composite = new long[SegmentedSieve.SEGMENT_WORDS];
+                sieve.sieve(segment, composite);
+                int firstWord = (int) (segment * SegmentedSieve.SEGMENT_WORDS);
+                int count = (int) Math.min(SegmentedSieve.SEGMENT_WORDS, wordCount - firstWord);
+                for (int i = 0; i < count; i++) {
+                    words.put(firstWord + i, ~composite[i]);
+                }
+            });
+            if ((bitCount & 63) != 0) {
+                int last = (int) wordCount - 1;
+                words.put(last, words.get(last) & ((1L << (bitCount & 63)) - 1));
+            }
+
+            long primes = 0;
+            for (int word = 0; word < wordCount; word++) {
+                if (word % CHECKPOINT_WORDS == 0) {
+                    checkpoints.put(word / CHECKPOINT_WORDS, primes);
+                }
+                primes += Long.bitCount(words.get(word));
+            }
+            if (wordCount % CHECKPOINT_WORDS == 0) {
+                checkpoints.put((int) (wordCount / CHECKPOINT_WORDS), primes);
+            }
+
+            longs.put(1, limit).put(2, wordCount).put(3, checkpointCount);
+            buffer.force();
+            longs.put(0, MAGIC); // Last, so that a partly written table is not opened
+            buffer.force();
+        }
+        return open(file);
+    }
+
+    /**
+     * @throws IOException if {@code file} is not a complete table written by
+     *         {@link #build(Path, long)}
+     */
+    static PrimeTable open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new PrimeTable(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return the bound the table was built for: it covers the numbers below it
+     */
+    long limit() {
+        return limit;
+    }
+
+    boolean isPrime(long number) {
+        checkCovered(number);
+        if (number < 3 || (number & 1) == 0) {
+            return number == 2;
+        }
+        long bit = number >>> 1;
+        return (words.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return the number of primes less than or equal to {@code number}
+     */
+    long pi(long number) {
+        checkCovered(number);
+        if (number < 2) {
+            return 0;
+        }
+        return 1 + oddPrimesBelowBit((number + 1) >>> 1);
+    }
+
+    /**
+     * @return the number of primes in {@code [from, to)}
+     */
+    long count(long from, long to) {
+        checkRange(from, to);
+        return from >= to ? 0 : pi(to - 1) - (from == 0 ? 0 : pi(from - 1));
+    }
+
+    /**
+     * @return the primes in {@code [from, to)}, in order
+     */
+    LongStream primes(long from, long to) {
+        checkRange(from, to);
+        PrimeIterator iterator = new PrimeIterator(from, to);
+        return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+                        | Spliterator.NONNULL),
+                false);
+    }
+
+    /**
+     * @return the number of set bits before {@code bit}
+     */
+    private long oddPrimesBelowBit(long bit) {
+        int word = (int) (bit >>> 6);
+        int checkpoint = word / CHECKPOINT_WORDS;
+        long primes = checkpoints.get(checkpoint);
+        for (int i = checkpoint * CHECKPOINT_WORDS; i < word; i++) {
+            primes += Long.bitCount(words.get(i));
+        }
+        if ((bit & 63) != 0) {
+            primes += Long.bitCount(words.get(word) & ((1L << bit) - 1));
+        }
+        return primes;
+    }
+
+    private void checkCovered(long number) {
+        if (number < 0 || number >= limit) {
+            throw new IllegalArgumentException(number + " is outside [0, " + limit + ")");
+        }
+    }
+
+    private void checkRange(long from, long to) {
+        if (from < 0 || to > limit) {
+            throw new IllegalArgumentException(
+                    "[" + from + ", " + to + ") is outside [0, " + limit + ")");
+        }
+    }
+
+    /**
+     * Walks the set bits a word at a time.
+     */
+    private class PrimeIterator implements PrimitiveIterator.OfLong {
+
+        private final long to;
+        private long pending2;
+        private int wordIndex;
+        private long word;
+
+        PrimeIterator(long from, long to) {
+            this.to = to;
+            pending2 = from <= 2 && to > 2 ? 2 : -1;
+            long firstBit = Math.max(1, (from + 1) >>> 1); // Bit 0 is 1, never prime
+            wordIndex = (int) (firstBit >>> 6);
+            word = wordIndex < words.limit() ? words.get(wordIndex) & (-1L << firstBit) : 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending2 > 0) {
+                return true;
+            }
+            while (word == 0) {
+                if (++wordIndex >= words.limit()) {
+                    return false;
+                }
+                word = words.get(wordIndex);
+            }
+            return ((long) wordIndex * 64 + Long.numberOfTrailingZeros(word)) * 2 + 1 < to;
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (pending2 > 0) {
+                pending2 = -1;
+                return 2;
+            }
+            long bit = (long) wordIndex * 64 + Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            return bit * 2 + 1;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.singleresponsibilityprinciple;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PrimeTableDemo {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void smallTable() throws IOException {
+        PrimeTable table = PrimeTable.build(directory.resolve("primes"), 30);
+
+        assertAll(() -> assertTrue(table.isPrime(2)),
+                () -> assertTrue(table.isPrime(29)),
+                () -> assertFalse(table.isPrime(1)),
+                () -> assertFalse(table.isPrime(27)),
+                () -> assertEquals(10, table.pi(29)),
+                () -> assertEquals(4, table.count(0, 10)),
+                () -> assertArrayEquals(new long[] {2, 3, 5, 7, 11, 13, 17, 19, 23, 29},
+                        table.primes(0, 30).toArray()),
+                () -> assertArrayEquals(new long[] {11, 13}, table.primes(10, 17).toArray()),
+                () -> assertThrows(IllegalArgumentException.class, () -> table.isPrime(30)));
+    }
+
+    /**
+     * Every count matches trial division in {@link CountPrimes}, including limits that end at and
+     * just after checkpoint and word boundaries.
+     */
+    @Test
+    void matchesCountPrimes() throws IOException {
+        CountPrimes countPrimes = new CountPrimes();
+        for (long limit : new long[] {2, 3, 127, 128, 129, 1_024, 1_025, 3_001}) {
+            PrimeTable table = PrimeTable.build(directory.resolve("primes-" + limit), limit);
+            for (int number = 0; number < limit; number++) {
+                assertEquals(countPrimes.countPrimesSingleResp(number + 1), table.pi(number),
+                        "pi(" + number + ") with limit " + limit);
+            }
+        }
+    }
+
+    /**
+     * Built once, then reopened: counts over ranges match the sieve and enumeration matches
+     * counting.
+     */
+    @Test
+    void reopenedTable() throws IOException {
+        Path file = directory.resolve("primes");
+        long limit = 20_000_000;
+        PrimeTable.build(file, limit);
+        PrimeTable table = PrimeTable.open(file);
+        PrimeCounter counter = new PrimeCounter();
+
+        System.out.println("Table for 2 * 10^7: " + Files.size(file) + " bytes");
+        assertAll(() -> assertEquals(counter.countBelow(limit), table.pi(limit - 1)),
+                () -> assertEquals(counter.countBelow(12_345_678), table.count(0, 12_345_678)),
+                () -> assertEquals(table.count(1_000_000, 1_100_000),
+                        table.primes(1_000_000, 1_100_000).count()),
+                () -> assertEquals(LongStream.range(19_990_000, limit).filter(table::isPrime)
+                        .count(), table.primes(19_990_000, limit).count()));
+    }
+
+    @Test
+    void notATable() throws IOException {
+        Path file = Files.write(directory.resolve("other"), new byte[64]);
+
+        assertAll(() -> assertThrows(IOException.class, () -> PrimeTable.open(file)),
+                () -> assertThrows(IOException.class, () -> PrimeTable
+                        .open(Files.write(directory.resolve("short"), new byte[5]))));
+    }
+
+    /**
+     * A table cut short, e.g., by a copy that did not finish, is rejected when opened rather than
+     * failing on some later query.
+     */
+    @Test
+    void truncatedTable() throws IOException {
+        Path file = directory.resolve("primes");
+        PrimeTable.build(file, 1_000_000);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - Long.BYTES);
+        }
+
+        assertThrows(IOException.class, () -> PrimeTable.open(file));
+    }
+
+    @Test
+    void queryLatency() throws IOException {
+        long limit = 100_000_000;
+        PrimeTable table = PrimeTable.build(directory.resolve("primes"), limit);
+        long[] queries = new SplittableRandom(1).longs(1_000_000, 0, limit).toArray();
+
+        long start = System.nanoTime();
+        long total = 0;
+        for (long query : queries) {
+            total += table.pi(query);
+        }
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("pi(n): %.0f ns per query%n", (double) nanos / queries.length);
+        assertTrue(total > 0);
+    }
+}
@@ -0,0 +1,103 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.singleresponsibilityprinciple;
+
+import java.util.Arrays;
+
+/**
+ * Sieve of Eratosthenes over one segment of the numbers at a time, recording only odd numbers.
+ * <ul>
+ * <li>a segment of {@link #SEGMENT_NUMBERS} numbers starting at {@code low} (a multiple of
+ * {@code SEGMENT_NUMBERS}) is a bitset in which bit {@code i} stands for the odd number
+ * {@code low + 2i + 1}; a set bit means composite</li>
+ * <li>the bitset is 32 KiB, so crossing off multiples stays within the L1 or L2 cache</li>
+ * <li>segments only share the (read-only) odd base primes up to the square root of the limit, so
+ * they can be sieved in parallel</li>
+ * </ul>
+ */
+class SegmentedSieve {
+
+    static final int SEGMENT_BYTES = 32 * 1024;
+    static final int SEGMENT_NUMBERS = SEGMENT_BYTES * 8 * 2;
+    static final int SEGMENT_WORDS = SEGMENT_BYTES / Long.BYTES;
+
+    private final int[] basePrimes;
+
+    /**
+     * Prepares to sieve the numbers below {@code limit}.
+     */
+    SegmentedSieve(long limit) {
+        basePrimes = oddPrimesUpTo((int) Math.sqrt((double) limit) + 1);
+    }
+
+    /**
+     * @return the number of segments covering the numbers below {@code limit}
+     */
+    static long segmentCount(long limit) {
+        return (limit + SEGMENT_NUMBERS - 1) / SEGMENT_NUMBERS;
+    }
+
+    /**
+     * Sieves segment {@code segment} into {@code composite}, which must have
+     * {@link #SEGMENT_WORDS} words. 1 is marked composite; 2, being even, is not represented.
+     */
+    void sieve(long segment, long[] composite) {
+        Arrays.fill(composite, 0);
+        long low = segment * SEGMENT_NUMBERS;
+        long high = low + SEGMENT_NUMBERS;
+        if (segment == 0) {
+            composite[0] = 1; // 1
+        }
+        for (int prime : basePrimes) {
+            long square = (long) prime * prime;
+            if (square >= high) {
+                break;
+            }
+            long multiple = Math.max(square, (low + prime - 1) / prime * prime);
+            if ((multiple & 1) == 0) {
+                multiple += prime;
+            }
+            for (long bit = (multiple - low) >>> 1; bit < SEGMENT_NUMBERS / 2; bit += prime) {
+                composite[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * @return the number of odd primes in a sieved segment that are below {@code limit}
+     */
+    static long countPrimes(long segment, long[] composite, long limit) {
+        long low = segment * SEGMENT_NUMBERS;
+        // Odd numbers low + 2i + 1 < limit
+        long candidates = Math.min(SEGMENT_NUMBERS / 2, Math.max(0, (limit - low) / 2));
+        int fullWords = (int) (candidates >>> 6);
+        long primes = 0;
+        for (int word = 0; word < fullWords; word++) {
+            primes += Long.bitCount(~composite[word]);
+        }
+        int remainingBits = (int) (candidates & 63);
+        if (remainingBits != 0) {
+            primes += Long.bitCount(~composite[fullWords] & ((1L << remainingBits) - 1));
+        }
+        return primes;
+    }
+
+    /**
+     * Simple (unsegmented) sieve for the base primes.
+     *
+     * @return the odd primes up to and including {@code limit}
+     */
+    static int[] oddPrimesUpTo(int limit) {
+        boolean[] composite = new boolean[limit + 1];
+        int[] primes = new int[Math.max(16, (int) (1.3 * limit / Math.max(1, Math.log(limit))))];
+        int count = 0;
+        for (int number = 3; number <= limit; number += 2) {
+            if (!composite[number]) {
+                primes[count++] = number;
+                for (long multiple = (long) number * number; multiple <= limit;
+                        multiple += 2 * number) {
+                    composite[(int) multiple] = true;
+                }
+            }
+        }
+        return Arrays.copyOf(primes, count);
+    }
+}
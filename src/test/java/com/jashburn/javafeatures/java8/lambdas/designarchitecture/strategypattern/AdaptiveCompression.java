@@ -0,0 +1,248 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Concrete gzip strategy that picks how hard to compress from how compressible the input looks,
+ * so that already-compressed content (images, video, archives) is not deflated for nothing.
+ * <p>
+ * The input is taken in blocks of {@code blockSize}. For each block (or only the first, with
+ * {@link Granularity#FILE}), a few samples of {@link #SAMPLE_SIZE} bytes spread over the block
+ * are deflated at the fastest level, and the compressed-to-original ratio of the samples decides
+ * the {@link Level}:
+ * <ul>
+ * <li>from {@code storeFrom} (e.g., 0.9): the block is stored, i.e., copied into deflate stored
+ * blocks at almost no CPU cost</li>
+ * <li>from {@code fastFrom} (e.g., 0.5): compressed at the fastest level, as a better level would
+ * save little more on data this dense</li>
+ * <li>below: compressed at the default level. The best level is not used: on text, it takes
+ * several times as long for a few percent less output</li>
+ * </ul>
+ * The blocks make up a single gzip member: each is raw-deflated with the last 32 KiB of the
+ * previous block as its dictionary and ends with a sync flush, as in
+ * {@link ParallelGzipCompression.Format#SINGLE_STREAM}, so that switching level costs only the
+ * few bytes of the flush. Each decision is reported to a listener.
+ */
+class AdaptiveCompression implements CompressionStrategy {
+
+    enum Granularity {
+        FILE, BLOCK
+    }
+
+    enum Level {
+        STORE(Deflater.NO_COMPRESSION), FAST(Deflater.BEST_SPEED),
+        DEFAULT(Deflater.DEFAULT_COMPRESSION);
+
+        final int deflaterLevel;
+
+        Level(int deflaterLevel) {
+            this.deflaterLevel = deflaterLevel;
+        }
+    }
+
+    /**
+     * The level chosen for the block at {@code offset}, and the sampled ratio it was chosen from.
+     */
+    static class Decision {
+
+        final long offset;
+        final int length;
+        final double estimatedRatio;
+        final Level level;
+
+        Decision(long offset, int length, double estimatedRatio, Level level) {
+            this.offset = offset;
+            this.length = length;
+            this.estimatedRatio = estimatedRatio;
+            this.level = level;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s at %d (%d bytes, estimated ratio %.2f)", level, offset, length,
+                    estimatedRatio);
+        }
+    }
+
+    static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    static final int SAMPLE_SIZE = 4 * 1024;
+    static final int SAMPLES_PER_BLOCK = 4;
+
+    private final Granularity granularity;
+    private final double storeFrom;
+    private final double fastFrom;
+    private final int blockSize;
+    private final Consumer<? super Decision> listener;
+
+    AdaptiveCompression(Granularity granularity) {
+        this(granularity, 0.9, 0.5, DEFAULT_BLOCK_SIZE, decision -> {
+        });
+    }
+
+    /**
+     * @param storeFrom the sampled ratio from which blocks are stored
+     * @param fastFrom the sampled ratio from which blocks are compressed at the fastest level
+     * @param listener called with each decision, on the writing thread
+     */
+    AdaptiveCompression(Granularity granularity, double storeFrom, double fastFrom, int blockSize,
+            Consumer<? super Decision> listener) {
+        if (fastFrom > storeFrom) {
+            throw new IllegalArgumentException("fastFrom must not exceed storeFrom");
+        }
+        if (blockSize < ParallelGzipCompression.DICTIONARY_SIZE) {
+            throw new IllegalArgumentException(
+                    "block size must be at least " + ParallelGzipCompression.DICTIONARY_SIZE);
+        }
+        this.granularity = granularity;
+        this.storeFrom = storeFrom;
+        this.fastFrom = fastFrom;
+        this.blockSize = blockSize;
+        this.listener = listener;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream data) throws IOException {
+        return new AdaptiveOutputStream(data);
+    }
+
+    /**
+     * A block of input and its compressed output, with a deflater per level and the sampler.
+     */
+    @Override
+    public long bufferBytes() {
+        long deflaters = Level.values().length + 1;
+        return 2L * blockSize + deflaters * CompressionStrategy.super.bufferBytes();
+    }
+
+    Level levelFor(double estimatedRatio) {
+        if (estimatedRatio >= storeFrom) {
+            return Level.STORE;
+        }
+        return estimatedRatio >= fastFrom ? Level.FAST : Level.DEFAULT;
+    }
+
+    private class AdaptiveOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final Deflater[] deflaters = new Deflater[Level.values().length];
+        private final Deflater sampler = new Deflater(Deflater.BEST_SPEED, true);
+        private final byte[] sampleOutput = new byte[2 * SAMPLE_SIZE];
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final CRC32 crc = new CRC32();
+        private final byte[] block = new byte[blockSize];
+        private int blockLength;
+        private byte[] dictionary;
+        private Level fileLevel;
+        private long totalLength;
+        private boolean closed;
+
+        AdaptiveOutputStream(OutputStream out) throws IOException {
+            this.out = out;
+            for (Level level : Level.values()) {
+                deflaters[level.ordinal()] = new Deflater(level.deflaterLevel, true);
+            }
+            out.write(ParallelGzipCompression.HEADER);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+            while (length > 0) {
+                int copied = Math.min(length, blockSize - blockLength);
+                System.arraycopy(bytes, offset, block, blockLength, copied);
+                blockLength += copied;
+                offset += copied;
+                length -= copied;
+                if (blockLength == blockSize) {
+                    writeBlock(false);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeBlock(true);
+                ParallelGzipCompression.writeTrailer(out, crc.getValue(), totalLength);
+            } finally {
+                for (Deflater deflater : deflaters) {
+                    deflater.end();
+                }
+                sampler.end();
+                out.close();
+            }
+        }
+
+        private void writeBlock(boolean last) throws IOException {
+            // An empty last block just ends the stream
+            Level level = blockLength == 0 ? Level.STORE : fileLevel;
+            if (level == null) {
+                double estimatedRatio = estimateRatio();
+                level = levelFor(estimatedRatio);
+                listener.accept(new Decision(totalLength, blockLength, estimatedRatio, level));
+                if (granularity == Granularity.FILE) {
+                    fileLevel = level;
+                }
+            }
+
+            Deflater deflater = deflaters[level.ordinal()];
+            deflater.reset();
+            if (dictionary != null && level != Level.STORE) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(block, 0, blockLength);
+            if (last) {
+                deflater.finish();
+            }
+            ParallelGzipCompression.deflateAll(deflater, output,
+                    last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            output.writeTo(out);
+            output.reset();
+
+            crc.update(block, 0, blockLength);
+            totalLength += blockLength;
+            if (!last) { // Full, so at least as long as the dictionary
+                dictionary = Arrays.copyOfRange(block,
+                        blockLength - ParallelGzipCompression.DICTIONARY_SIZE, blockLength);
+            }
+            blockLength = 0;
+        }
+
+        /**
+         * @return the compressed-to-original ratio of samples spread evenly over the block
+         */
+        private double estimateRatio() {
+            int samples =
+                    Math.min(SAMPLES_PER_BLOCK, (blockLength + SAMPLE_SIZE - 1) / SAMPLE_SIZE);
+            int sampleLength = Math.min(SAMPLE_SIZE, blockLength);
+            int stride = samples > 1 ? (blockLength - sampleLength) / (samples - 1) : 0;
+            long compressed = 0;
+            for (int i = 0; i < samples; i++) {
+                sampler.reset();
+                sampler.setInput(block, i * stride, sampleLength);
+                sampler.finish();
+                while (!sampler.finished()) {
+                    compressed += sampler.deflate(sampleOutput);
+                }
+            }
+            return (double) compressed / ((long) samples * sampleLength);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.compress;
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.gunzip;
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.sampleData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.AdaptiveCompression.Decision;
+import com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.AdaptiveCompression.Granularity;
+import com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.AdaptiveCompression.Level;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AdaptiveCompressionDemo {
+
+    private static final int BLOCK_SIZE = AdaptiveCompression.DEFAULT_BLOCK_SIZE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readableByGZIPInputStream() throws IOException {
+        for (Granularity granularity : Granularity.values()) {
+            CompressionStrategy strategy = new AdaptiveCompression(granularity);
+            for (int blocks : new int[] {0, 1, 2, 5}) {
+                for (int extra : new int[] {0, 1, 40_000}) {
+                    byte[] data = mixedData(blocks, extra);
+                    assertArrayEquals(data, gunzip(compress(strategy, data)),
+                            granularity + ", " + data.length + " bytes");
+                }
+            }
+        }
+    }
+
+    /**
+     * Text blocks are compressed at the default level, random (incompressible) ones stored.
+     */
+    @Test
+    void choosesLevelPerBlock() throws IOException {
+        List<Decision> decisions = new ArrayList<>();
+        CompressionStrategy strategy = new AdaptiveCompression(Granularity.BLOCK, 0.9, 0.5,
+                BLOCK_SIZE, decisions::add);
+
+        compress(strategy, mixedData(4, 0));
+
+        assertEquals(List.of(Level.DEFAULT, Level.STORE, Level.DEFAULT, Level.STORE),
+                decisions.stream().map(decision -> decision.level).collect(Collectors.toList()));
+        decisions.forEach(System.out::println);
+    }
+
+    @Test
+    void choosesLevelOncePerFile() throws IOException {
+        List<Decision> decisions = new ArrayList<>();
+        CompressionStrategy strategy = new AdaptiveCompression(Granularity.FILE, 0.9, 0.5,
+                BLOCK_SIZE, decisions::add);
+
+        compress(strategy, mixedData(4, 0));
+
+        assertEquals(1, decisions.size());
+        assertEquals(Level.DEFAULT, decisions.get(0).level);
+    }
+
+    /**
+     * Thresholds of 0 store everything: the output is the input plus a few bytes per block.
+     */
+    @Test
+    void configurableThresholds() throws IOException {
+        byte[] data = sampleData(4 * BLOCK_SIZE);
+        byte[] compressed = compress(new AdaptiveCompression(Granularity.BLOCK, 0, 0, BLOCK_SIZE,
+                decision -> assertEquals(Level.STORE, decision.level)), data);
+
+        assertTrue(compressed.length > data.length);
+        assertTrue(compressed.length < data.length + 100 * 5);
+        assertArrayEquals(data, gunzip(compressed));
+    }
+
+    @Test
+    void compressAdaptively() throws IOException {
+        Path inFile = Files.write(directory.resolve("in"), mixedData(6, 123));
+        Path outFile = directory.resolve("in.gz");
+
+        new Client().compressAdaptively(inFile, outFile.toFile());
+
+        assertArrayEquals(Files.readAllBytes(inFile), gunzip(Files.readAllBytes(outFile)));
+    }
+
+    /**
+     * Compares time and size with {@code GZIPOutputStream} at the default level on 32 MB of half
+     * text, half random blocks, as in an archive of documents and media.
+     */
+    @Test
+    void throughputAndRatioOnMixedContent() throws IOException {
+        byte[] data = mixedData(128, 0);
+        CompressionStrategy[] strategies = {GZIPOutputStream::new,
+                new AdaptiveCompression(Granularity.FILE),
+                new AdaptiveCompression(Granularity.BLOCK)};
+        String[] names = {"GZIPOutputStream", "adaptive per file", "adaptive per block"};
+
+        for (int run = 0; run < 2; run++) {
+            for (int i = 0; i < strategies.length; i++) {
+                long start = System.nanoTime();
+                int compressedLength = compress(strategies[i], data).length;
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%s: %.0f MB/s, %d bytes%n", names[i],
+                        data.length * 1e3 / nanos, compressedLength);
+            }
+        }
+    }
+
+    /**
+     * Alternates blocks of text-like and random bytes, starting with text, then adds
+     * {@code extra} bytes of text.
+     */
+    private static byte[] mixedData(int blocks, int extra) {
+        Random random = new Random(blocks);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int i = 0; i < blocks; i++) {
+            byte[] block = sampleData(BLOCK_SIZE + i);
+            if (i % 2 == 1) {
+                random.nextBytes(block);
+            }
+            data.write(block, 0, BLOCK_SIZE);
+        }
+        data.writeBytes(sampleData(extra));
+        return data.toByteArray();
+    }
+}
@@ -0,0 +1,281 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Context that compresses every file in a directory tree with one strategy, concurrently, into a
+ * mirror tree, instead of calling {@link Compressor#compress(Path, java.io.File)} for one file
+ * after another.
+ * <ul>
+ * <li>files are compressed on a pool of {@code threads} threads, one per core by default</li>
+ * <li>files below {@code smallFileSize} are read, compressed and written in one go from memory,
+ * and handed to the pool in batches of up to {@code smallFileSize} bytes in total, so that a
+ * tree of many tiny files costs one task per batch rather than one per file</li>
+ * <li>larger files are compressed by a {@link Compressor}, which streams them through buffers of
+ * bounded size</li>
+ * <li>the memory for buffers in flight is bounded by {@code memoryBudget}: a batch is charged
+ * twice its size (input and output), and every compression the strategy's
+ * {@link CompressionStrategy#bufferBytes()}, e.g., the blocks a parallel strategy keeps in flight.
+ * The thread walking the tree waits for budget before handing over more work, so memory stays
+ * bounded however far the walk runs ahead of the pool. A charge larger than the whole budget is
+ * cut down to it, so such a file is compressed on its own, but may still exceed the budget</li>
+ * </ul>
+ * Each run reports the original and compressed size and compression time of each file, and the
+ * totals with the wall-clock throughput.
+ */
+class BatchCompressor {
+
+    static final int DEFAULT_SMALL_FILE_SIZE = 256 * 1024;
+    static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+
+    /**
+     * The budget is counted in permits of this many bytes, as a {@code Semaphore} counts in an
+     * {@code int}.
+     */
+    private static final int PERMIT_BYTES = 1024;
+
+    static class FileResult {
+
+        final Path source;
+        final long originalBytes;
+        final long compressedBytes;
+        final long nanos;
+
+        FileResult(Path source, long originalBytes, long compressedBytes, long nanos) {
+            this.source = source;
+            this.originalBytes = originalBytes;
+            this.compressedBytes = compressedBytes;
+            this.nanos = nanos;
+        }
+
+        double ratio() {
+            return originalBytes == 0 ? 1 : (double) compressedBytes / originalBytes;
+        }
+
+        double megabytesPerSecond() {
+            return nanos == 0 ? 0 : originalBytes * 1e3 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d -> %d bytes (%.2f), %.0f MB/s", source, originalBytes,
+                    compressedBytes, ratio(), megabytesPerSecond());
+        }
+    }
+
+    static class Report {
+
+        final List<FileResult> files;
+        final long wallNanos;
+
+        Report(List<FileResult> files, long wallNanos) {
+            this.files = Collections.unmodifiableList(files);
+            this.wallNanos = wallNanos;
+        }
+
+        long originalBytes() {
+            return files.stream().mapToLong(file -> file.originalBytes).sum();
+        }
+
+        long compressedBytes() {
+            return files.stream().mapToLong(file -> file.compressedBytes).sum();
+        }
+
+        double ratio() {
+            long original = originalBytes();
+            return original == 0 ? 1 : (double) compressedBytes() / original;
+        }
+
+        /**
+         * @return the original bytes compressed per second of wall-clock time
+         */
+        double megabytesPerSecond() {
+            return wallNanos == 0 ? 0 : originalBytes() * 1e3 / wallNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files: %d -> %d bytes (%.2f), %.0f MB/s in %.0f ms",
+                    files.size(), originalBytes(), compressedBytes(), ratio(),
+                    megabytesPerSecond(), wallNanos / 1e6);
+        }
+    }
+
+    private final CompressionStrategy strategy;
+    private final int threads;
+    private final long memoryBudget;
+    private final int smallFileSize;
+
+    BatchCompressor(CompressionStrategy strategy) {
+        this(strategy, Runtime.getRuntime().availableProcessors(), DEFAULT_MEMORY_BUDGET,
+                DEFAULT_SMALL_FILE_SIZE);
+    }
+
+    BatchCompressor(CompressionStrategy strategy, int threads, long memoryBudget,
+            int smallFileSize) {
+        if (threads < 1 || memoryBudget < PERMIT_BYTES || smallFileSize < 1) {
+            throw new IllegalArgumentException(
+                    "threads, memory budget and small file size must be positive");
+        }
+        this.strategy = strategy;
+        this.threads = threads;
+        this.memoryBudget = Math.min(memoryBudget, (long) Integer.MAX_VALUE * PERMIT_BYTES);
+        this.smallFileSize = smallFileSize;
+    }
+
+    /**
+     * Compresses each regular file under {@code sourceRoot} into the same relative path under
+     * {@code targetRoot}, with {@code suffix} appended to its name.
+     * <p>
+     * The first failure, of the walk or of a task, stops the run: the walk stops handing over
+     * work, the tasks not yet done are cancelled and the pool's threads interrupted, and the
+     * failure is thrown, as an {@code IOException} if that is what it was.
+     */
+    Report compressTree(Path sourceRoot, Path targetRoot, String suffix) throws IOException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore budget = new Semaphore((int) (memoryBudget / PERMIT_BYTES));
+        List<CompletableFuture<List<FileResult>>> tasks = new ArrayList<>();
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        Consumer<CompletableFuture<List<FileResult>>> add = task -> {
+            tasks.add(task);
+            task.whenComplete((result, e) -> {
+                if (e != null) {
+                    firstFailure.completeExceptionally(e);
+                }
+            });
+        };
+        boolean complete = false;
+        try (Stream<Path> paths = Files.walk(sourceRoot)) {
+            Function<Path, Path> targetOf =
+                    file -> targetRoot.resolve(sourceRoot.relativize(file) + suffix);
+            List<Path> batch = new ArrayList<>();
+            long batchBytes = 0;
+            Iterator<Path> walk = paths.iterator();
+            while (walk.hasNext() && !firstFailure.isDone()) {
+                Path file = walk.next();
+                BasicFileAttributes attributes =
+                        Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isDirectory()) {
+                    // The walk visits a directory before its files, so each is created once
+                    Files.createDirectories(
+                            targetRoot.resolve(sourceRoot.relativize(file).toString()));
+                    continue;
+                }
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                long size = attributes.size();
+                if (size >= smallFileSize) {
+                    Path target = targetOf.apply(file);
+                    add.accept(submit(pool, budget, strategy.bufferBytes(),
+                            () -> List.of(compressLarge(file, target, size))));
+                    continue;
+                }
+                if (batchBytes + size > smallFileSize) {
+                    add.accept(submitBatch(pool, budget, batch, batchBytes, targetOf));
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                batch.add(file);
+                batchBytes += size;
+            }
+            if (!batch.isEmpty() && !firstFailure.isDone()) {
+                add.accept(submitBatch(pool, budget, batch, batchBytes, targetOf));
+            }
+            CompletableFuture<Void> all =
+                    CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new));
+            CompletableFuture.anyOf(all, firstFailure).join();
+            complete = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // The walk failed
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        } finally {
+            if (complete) {
+                pool.shutdown();
+            } else {
+                tasks.forEach(task -> task.cancel(true));
+                pool.shutdownNow();
+            }
+        }
+        List<FileResult> results = tasks.stream()
+                .flatMap(task -> task.join().stream())
+                .collect(Collectors.toList());
+        return new Report(results, System.nanoTime() - start);
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        List<FileResult> run() throws IOException;
+    }
+
+    /**
+     * Waits for {@code charge} bytes of the budget, then runs the task on the pool, handing the
+     * budget back when it is done.
+     */
+    private CompletableFuture<List<FileResult>> submit(ExecutorService pool, Semaphore budget,
+            long charge, Task task) {
+        int permits = (int) ((Math.min(charge, memoryBudget) + PERMIT_BYTES - 1) / PERMIT_BYTES);
+        budget.acquireUninterruptibly(permits);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                budget.release(permits);
+            }
+        }, pool);
+    }
+
+    private CompletableFuture<List<FileResult>> submitBatch(ExecutorService pool,
+            Semaphore budget, List<Path> batch, long batchBytes, Function<Path, Path> targetOf) {
+        return submit(pool, budget, 2 * batchBytes + strategy.bufferBytes(), () -> {
+            List<FileResult> results = new ArrayList<>(batch.size());
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            for (Path file : batch) {
+                long start = System.nanoTime();
+                byte[] data = Files.readAllBytes(file);
+                compressed.reset();
+                try (OutputStream out = strategy.compress(compressed)) {
+                    out.write(data);
+                }
+                try (OutputStream out = Files.newOutputStream(targetOf.apply(file))) {
+                    compressed.writeTo(out);
+                }
+                results.add(new FileResult(file, data.length, compressed.size(),
+                        System.nanoTime() - start));
+            }
+            return results;
+        });
+    }
+
+    private FileResult compressLarge(Path file, Path target, long size) throws IOException {
+        long start = System.nanoTime();
+        new Compressor(strategy).compress(file, target.toFile());
+        return new FileResult(file, size, Files.size(target), System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,189 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.gunzip;
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.sampleData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.BatchCompressor.FileResult;
+import com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.BatchCompressor.Report;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchCompressorDemo {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compressesTree() throws IOException {
+        Path source = createTree(directory.resolve("source"), 300, 3, 1 << 20);
+        Path target = directory.resolve("target");
+
+        Report report = new BatchCompressor(GZIPOutputStream::new).compressTree(source, target,
+                ".gz");
+
+        List<Path> sources = regularFiles(source);
+        assertEquals(sources.size(), report.files.size());
+        for (Path file : sources) {
+            Path compressed = target.resolve(source.relativize(file) + ".gz");
+            assertArrayEquals(Files.readAllBytes(file), gunzip(Files.readAllBytes(compressed)));
+        }
+        for (FileResult file : report.files) {
+            assertEquals(Files.size(file.source), file.originalBytes);
+            assertEquals(Files.size(target.resolve(source.relativize(file.source) + ".gz")),
+                    file.compressedBytes);
+        }
+        assertTrue(report.ratio() < 0.5);
+        System.out.println(report);
+    }
+
+    /**
+     * Large files are charged what the strategy says it buffers: with a budget of less than two
+     * such charges, no two large files are compressed at once, even with four threads.
+     */
+    @Test
+    void boundedMemory() throws IOException {
+        Path source = createTree(directory.resolve("source"), 0, 6, 1 << 20);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        CompressionStrategy counting = new CompressionStrategy() {
+            @Override
+            public OutputStream compress(OutputStream data) throws IOException {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return new FilterOutputStream(new GZIPOutputStream(data)) {
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        out.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        inFlight.decrementAndGet();
+                        super.close();
+                    }
+                };
+            }
+
+            @Override
+            public long bufferBytes() {
+                return 8 << 20;
+            }
+        };
+
+        Report report = new BatchCompressor(counting, 4, 12 << 20,
+                BatchCompressor.DEFAULT_SMALL_FILE_SIZE)
+                        .compressTree(source, directory.resolve("target"), ".gz");
+
+        assertEquals(6, report.files.size());
+        assertEquals(1, maxInFlight.get());
+    }
+
+    /**
+     * A strategy that buffers blocks in flight says so in its charge.
+     */
+    @Test
+    void chargeFollowsStrategy() {
+        CompressionStrategy gzip = GZIPOutputStream::new;
+        CompressionStrategy parallel = new ParallelGzipCompression(
+                ParallelGzipCompression.Format.SINGLE_STREAM, 6, 1 << 20, Runnable::run, 4);
+
+        assertTrue(parallel.bufferBytes() >= 9 << 20, () -> parallel.bufferBytes() + " bytes");
+        assertTrue(gzip.bufferBytes() < 1 << 20);
+    }
+
+    /**
+     * The first failure stops the run: the tasks still queued are dropped, rather than left to
+     * write into the target tree after the failure is thrown.
+     */
+    @Test
+    void failureStopsRun() throws Exception {
+        Path source = createTree(directory.resolve("source"), 0, 20, 1024);
+        AtomicInteger calls = new AtomicInteger();
+        CompressionStrategy failingFirst = data -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IOException("first file fails");
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return new GZIPOutputStream(data);
+        };
+        BatchCompressor compressor = new BatchCompressor(failingFirst, 1,
+                BatchCompressor.DEFAULT_MEMORY_BUDGET, 1);
+
+        IOException thrown = assertThrows(IOException.class,
+                () -> compressor.compressTree(source, directory.resolve("target"), ".gz"));
+        Thread.sleep(500);
+
+        assertEquals("first file fails", thrown.getMessage());
+        assertTrue(calls.get() <= 3, calls.get() + " files started");
+        assertThrows(IllegalArgumentException.class, () -> new BatchCompressor(failingFirst, 1,
+                BatchCompressor.DEFAULT_MEMORY_BUDGET, 0));
+    }
+
+    /**
+     * Compares the batch with compressing the files one after another, on a tree of 3000 small
+     * files and 8 larger ones. The gain from batching small files shows on any machine; the gain
+     * from the pool scales with cores.
+     */
+    @Test
+    void batchAgainstSerial() throws IOException {
+        Path source = createTree(directory.resolve("source"), 3000, 8, 2 << 20);
+        Compressor compressor = new Compressor(GZIPOutputStream::new);
+
+        for (int run = 0; run < 2; run++) {
+            Path serialTarget = directory.resolve("serial" + run);
+            long start = System.nanoTime();
+            for (Path file : regularFiles(source)) {
+                Path target = serialTarget.resolve(source.relativize(file) + ".gz");
+                Files.createDirectories(target.getParent());
+                compressor.compress(file, target.toFile());
+            }
+            System.out.printf("serial: %.0f ms%n", (System.nanoTime() - start) / 1e6);
+
+            Report report = new BatchCompressor(GZIPOutputStream::new).compressTree(source,
+                    directory.resolve("batch" + run), ".gz");
+            System.out.println("batch: " + report);
+        }
+    }
+
+    /**
+     * Creates {@code smallFiles} files of up to 8 KB and {@code largeFiles} files of
+     * {@code largeFileSize} bytes, spread over nested directories.
+     */
+    private static Path createTree(Path root, int smallFiles, int largeFiles, int largeFileSize)
+            throws IOException {
+        for (int i = 0; i < smallFiles; i++) {
+            Path file = root.resolve("dir" + i % 10).resolve("sub" + i % 3).resolve("s" + i);
+            Files.createDirectories(file.getParent());
+            Files.write(file, sampleData(i * 37 % 8192));
+        }
+        for (int i = 0; i < largeFiles; i++) {
+            Path file = root.resolve("large").resolve("l" + i);
+            Files.createDirectories(file.getParent());
+            Files.write(file, sampleData(largeFileSize + i));
+        }
+        return root;
+    }
+
+    private static List<Path> regularFiles(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+}
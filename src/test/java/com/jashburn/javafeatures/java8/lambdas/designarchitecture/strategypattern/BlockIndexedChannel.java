@@ -0,0 +1,232 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only channel over the uncompressed content of a container written by
+ * {@link BlockIndexedCompression}.
+ * <p>
+ * Opening it reads the trailer and the index. A read at any position then inflates only the
+ * blocks it overlaps, checking each against its CRC; the last block inflated is kept, so that
+ * sequential reads smaller than a block inflate each block once. Reading 1 MB from anywhere in
+ * the content costs a few blocks, whatever the size of the container.
+ * <p>
+ * Like a {@code FileChannel}, it has a position, so it is not for concurrent use: threads reading
+ * the same container open a channel each. Their inflaters are reused from a shared
+ * {@link BoundedPool}.
+ */
+class BlockIndexedChannel implements SeekableByteChannel {
+
+    private static final BoundedPool<Inflater> INFLATERS =
+            new BoundedPool<>(2 * Runtime.getRuntime().availableProcessors(),
+                    () -> new Inflater(true), Inflater::reset, Inflater::end);
+
+    /**
+     * The most bytes a byte of deflate data can inflate to, which bounds the uncompressed size of a
+     * block by the compressed data before it.
+     */
+    private static final long MAX_DEFLATE_RATIO = 1032;
+
+    private final FileChannel file;
+    private final long size;
+    private final int blockSize;
+    private final long[] blockOffsets; // One more than the blocks: the last is the index offset
+    private final int[] blockCrcs;
+    private final BoundedPool<Inflater>.Lease inflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] block; // A byte longer than a block, so the inflater reaches the end
+    private byte[] compressed = new byte[0];
+    private int cachedBlock = -1;
+    private int cachedLength;
+    private long position;
+
+    private BlockIndexedChannel(FileChannel file) throws IOException {
+        this.file = file;
+        if (file.size() < BlockIndexedCompression.TRAILER_LENGTH) {
+            throw new IOException("not a block-indexed container");
+        }
+        long indexEnd = file.size() - BlockIndexedCompression.TRAILER_LENGTH;
+        ByteBuffer trailer = readFully(indexEnd, BlockIndexedCompression.TRAILER_LENGTH);
+        long indexOffset = trailer.getLong();
+        size = trailer.getLong();
+        blockSize = trailer.getInt();
+        if (trailer.getLong() != BlockIndexedCompression.MAGIC || blockSize < 1) {
+            throw new IOException("not a block-indexed container");
+        }
+
+        // Check the trailer against the file before allocating anything from it
+        long blockCount = size / blockSize + (size % blockSize == 0 ? 0 : 1);
+        long indexLength = indexEnd - indexOffset;
+        if (size < 0 || indexOffset < 0 || indexLength < 0 || indexLength > Integer.MAX_VALUE
+                || indexLength != blockCount * BlockIndexedCompression.INDEX_ENTRY_LENGTH) {
+            throw new IOException("trailer does not match the container size");
+        }
+        long largestBlock = Math.min(blockSize, size);
+        if (largestBlock > MAX_DEFLATE_RATIO * indexOffset || largestBlock >= Integer.MAX_VALUE) {
+            throw new IOException("block size " + blockSize + " too large for the container");
+        }
+
+        ByteBuffer index = readFully(indexOffset, (int) indexLength);
+        blockOffsets = new long[(int) blockCount + 1];
+        blockCrcs = new int[(int) blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blockOffsets[i] = index.getLong();
+            blockCrcs[i] = index.getInt();
+        }
+        blockOffsets[(int) blockCount] = indexOffset;
+        for (int i = 0; i < blockCount; i++) {
+            long compressedLength = blockOffsets[i + 1] - blockOffsets[i];
+            if (blockOffsets[i] < 0 || compressedLength < 0
+                    || compressedLength > Integer.MAX_VALUE) {
+                throw new IOException("corrupt index entry " + i);
+            }
+        }
+        block = new byte[(int) largestBlock + 1];
+        inflater = INFLATERS.acquire(); // Last, so that it is not leaked if the checks fail
+    }
+
+    static BlockIndexedChannel open(Path container) throws IOException {
+        FileChannel file = FileChannel.open(container, StandardOpenOption.READ);
+        try {
+            return new BlockIndexedChannel(file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        checkOpen();
+        if (position >= size) {
+            return -1;
+        }
+        int read = 0;
+        while (destination.hasRemaining() && position < size) {
+            int blockIndex = (int) (position / blockSize);
+            loadBlock(blockIndex);
+            int offset = (int) (position - (long) blockIndex * blockSize);
+            int length = Math.min(destination.remaining(), cachedLength - offset);
+            destination.put(block, offset, length);
+            position += length;
+            read += length;
+        }
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer source) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Override
+    public BlockIndexedChannel position(long newPosition) throws IOException {
+        checkOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    /**
+     * @return the uncompressed size of the content
+     */
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file.isOpen()) {
+            inflater.close();
+            file.close();
+        }
+    }
+
+    private void loadBlock(int blockIndex) throws IOException {
+        if (blockIndex == cachedBlock) {
+            return;
+        }
+        int compressedLength = (int) (blockOffsets[blockIndex + 1] - blockOffsets[blockIndex]);
+        if (compressed.length < compressedLength) {
+            compressed = new byte[compressedLength];
+        }
+        readFully(ByteBuffer.wrap(compressed, 0, compressedLength), blockOffsets[blockIndex]);
+
+        cachedBlock = -1;
+        Inflater inflater = this.inflater.get();
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(block, length, block.length - length);
+                if (inflated == 0) {
+                    break;
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt block " + blockIndex, e);
+        }
+        long expectedLength = Math.min(blockSize, size - (long) blockIndex * blockSize);
+        crc.reset();
+        crc.update(block, 0, length);
+        if (!inflater.finished() || length != expectedLength
+                || (int) crc.getValue() != blockCrcs[blockIndex]) {
+            throw new IOException("corrupt block " + blockIndex);
+        }
+        cachedBlock = blockIndex;
+        cachedLength = length;
+    }
+
+    private ByteBuffer readFully(long filePosition, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, filePosition);
+        return buffer.flip();
+    }
+
+    private void readFully(ByteBuffer buffer, long filePosition) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, filePosition + buffer.position());
+            if (read < 0) {
+                throw new IOException("container truncated");
+            }
+        }
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (!file.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
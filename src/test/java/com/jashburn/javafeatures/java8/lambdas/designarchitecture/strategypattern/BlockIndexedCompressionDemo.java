@@ -0,0 +1,184 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.compress;
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.sampleData;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlockIndexedCompressionDemo {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Reads the whole content back through an {@code InputStream} on the channel, for sizes
+     * around the block size.
+     */
+    @Test
+    void sequentialRead() throws IOException {
+        CompressionStrategy strategy =
+                new BlockIndexedCompression(Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE);
+        for (int length : new int[] {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1,
+                10 * BLOCK_SIZE + 123}) {
+            byte[] data = sampleData(length);
+            Path container = Files.write(directory.resolve("c" + length), compress(strategy, data));
+
+            try (BlockIndexedChannel channel = BlockIndexedChannel.open(container);
+                    InputStream in = Channels.newInputStream(channel)) {
+                assertEquals(length, channel.size());
+                assertArrayEquals(data, in.readAllBytes(), length + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Reads ranges at random positions, across block boundaries and past the end.
+     */
+    @Test
+    void randomAccessRead() throws IOException {
+        byte[] data = sampleData(20 * BLOCK_SIZE + 7);
+        Path container = Files.write(directory.resolve("c"),
+                compress(new BlockIndexedCompression(Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE),
+                        data));
+        Random random = new Random(47);
+
+        try (BlockIndexedChannel channel = BlockIndexedChannel.open(container)) {
+            for (int i = 0; i < 200; i++) {
+                int position = random.nextInt(data.length);
+                ByteBuffer range = ByteBuffer.allocate(random.nextInt(3 * BLOCK_SIZE));
+                int read = channel.position(position).read(range);
+
+                int expected = Math.min(range.capacity(), data.length - position);
+                assertEquals(expected, read);
+                assertArrayEquals(Arrays.copyOfRange(data, position, position + expected),
+                        Arrays.copyOf(range.array(), read));
+                assertEquals(position + expected, channel.position());
+            }
+            assertEquals(-1, channel.position(data.length).read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    void readOnlyAndChecked() throws IOException {
+        byte[] data = sampleData(3 * BLOCK_SIZE);
+        byte[] container =
+                compress(new BlockIndexedCompression(Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE),
+                        data);
+        Path file = Files.write(directory.resolve("c"), container);
+        try (BlockIndexedChannel channel = BlockIndexedChannel.open(file)) {
+            assertThrows(NonWritableChannelException.class,
+                    () -> channel.write(ByteBuffer.allocate(1)));
+        }
+
+        container[100] ^= 0x55; // In the first block's compressed data
+        Files.write(file, container);
+        try (BlockIndexedChannel channel = BlockIndexedChannel.open(file)) {
+            assertThrows(IOException.class, () -> channel.read(ByteBuffer.allocate(10)));
+            channel.position(BLOCK_SIZE).read(ByteBuffer.allocate(10)); // Other blocks still read
+        }
+
+        Path notContainer = Files.write(directory.resolve("n"), data);
+        assertThrows(IOException.class, () -> BlockIndexedChannel.open(notContainer));
+    }
+
+    /**
+     * A trailer whose sizes do not fit the file fails to open with an {@code IOException}, rather
+     * than allocating buffers of the sizes it claims.
+     */
+    @Test
+    void corruptTrailer() throws IOException {
+        byte[] container =
+                compress(new BlockIndexedCompression(Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE),
+                        sampleData(3 * BLOCK_SIZE));
+        int trailer = container.length - BlockIndexedCompression.TRAILER_LENGTH;
+        long indexOffset = ByteBuffer.wrap(container).getLong(trailer);
+
+        assertAll(
+                () -> assertCorrupt(container, trailer, indexOffset, Long.MAX_VALUE, BLOCK_SIZE),
+                () -> assertCorrupt(container, trailer, indexOffset, 3L * BLOCK_SIZE,
+                        Integer.MAX_VALUE),
+                () -> assertCorrupt(container, trailer, indexOffset, Integer.MAX_VALUE,
+                        Integer.MAX_VALUE),
+                () -> assertCorrupt(container, trailer, -1, 3L * BLOCK_SIZE, BLOCK_SIZE),
+                () -> assertCorrupt(container, trailer, indexOffset + 1, 3L * BLOCK_SIZE,
+                        BLOCK_SIZE),
+                () -> assertCorrupt(container, trailer, indexOffset, -1, BLOCK_SIZE));
+    }
+
+    private void assertCorrupt(byte[] container, int trailer, long indexOffset, long size,
+            int blockSize) throws IOException {
+        byte[] corrupt = container.clone();
+        ByteBuffer.wrap(corrupt, trailer, 20).putLong(indexOffset).putLong(size).putInt(blockSize);
+        Path file = Files.write(directory.resolve("corrupt"), corrupt);
+
+        assertThrows(IOException.class, () -> BlockIndexedChannel.open(file).close(),
+                indexOffset + ", " + size + ", " + blockSize);
+    }
+
+    @Test
+    void writtenByCompressor() throws IOException {
+        Path inFile = Files.write(directory.resolve("in"), sampleData(1_000_000));
+        Path outFile = directory.resolve("in.blk");
+
+        new Compressor(new BlockIndexedCompression()).compress(inFile, outFile.toFile());
+
+        try (InputStream in = Channels.newInputStream(BlockIndexedChannel.open(outFile))) {
+            assertArrayEquals(Files.readAllBytes(inFile), in.readAllBytes());
+        }
+    }
+
+    /**
+     * Reads 1 MB ranges from the end half of 64 MB of content, from the container and from a gzip
+     * file, which has to be decompressed from the start. Also compares sizes.
+     */
+    @Test
+    void rangeReadTime() throws IOException {
+        int length = 64 << 20;
+        int rangeLength = 1 << 20;
+        byte[] data = sampleData(length);
+        Path container = Files.write(directory.resolve("c"),
+                compress(new BlockIndexedCompression(), data));
+        Path gzip = Files.write(directory.resolve("c.gz"), compress(GZIPOutputStream::new, data));
+        System.out.printf("container: %d bytes, gzip: %d bytes%n", Files.size(container),
+                Files.size(gzip));
+        Random random = new Random(1);
+        ByteBuffer range = ByteBuffer.allocate(rangeLength);
+
+        try (BlockIndexedChannel channel = BlockIndexedChannel.open(container)) {
+            for (int run = 0; run < 3; run++) {
+                long position = length / 2 + random.nextInt(length / 2 - rangeLength);
+                long start = System.nanoTime();
+                range.clear();
+                channel.position(position).read(range);
+                System.out.printf("container: 1 MB at %d in %.2f ms%n", position,
+                        (System.nanoTime() - start) / 1e6);
+            }
+        }
+        long position = length / 2;
+        long start = System.nanoTime();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gzip))) {
+            in.skipNBytes(position);
+            in.readNBytes(rangeLength);
+        }
+        System.out.printf("gzip: 1 MB at %d in %.2f ms%n", position,
+                (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,139 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Pool of reusable objects that hold native memory or large buffers, such as {@code Deflater}s,
+ * {@code Inflater}s and byte arrays, so that each compression does not allocate its own.
+ * <ul>
+ * <li>{@link #acquire()} takes an idle object, or creates one if there is none. By default it
+ * never waits, so the pool bounds only the objects kept idle, not those in use: 50 threads
+ * compressing at once hold 50 deflaters, whatever the capacity. Given {@code maxLeased}, it waits
+ * instead while that many are in use, which bounds the total; a thread must then not wait for a
+ * lease while holding one, or threads holding them all can wait on each other</li>
+ * <li>the object is returned by closing its {@link Lease}, typically in try-with-resources. It is
+ * reset then, and kept if fewer than {@code capacity} objects are idle, or disposed of at once
+ * (e.g., {@code Deflater::end}) otherwise, rather than left to a cleaner to free its native
+ * memory at some later GC</li>
+ * </ul>
+ * Thread-safe; a lease is for use by one thread at a time.
+ */
+class BoundedPool<T> {
+
+    private final BlockingQueue<T> idle;
+    private final Supplier<? extends T> factory;
+    private final Consumer<? super T> reset;
+    private final Consumer<? super T> dispose;
+    private final Semaphore leases; // Null if leases are not capped
+    private final AtomicLong created = new AtomicLong();
+
+    BoundedPool(int capacity, Supplier<? extends T> factory, Consumer<? super T> reset,
+            Consumer<? super T> dispose) {
+        this(capacity, 0, factory, reset, dispose);
+    }
+
+    /**
+     * @param maxLeased the most objects in use at once, or 0 for no limit
+     */
+    BoundedPool(int capacity, int maxLeased, Supplier<? extends T> factory,
+            Consumer<? super T> reset, Consumer<? super T> dispose) {
+        if (maxLeased < 0) {
+            throw new IllegalArgumentException("maxLeased must not be negative");
+        }
+        idle = new ArrayBlockingQueue<>(capacity);
+        leases = maxLeased == 0 ? null : new Semaphore(maxLeased);
+        this.factory = factory;
+        this.reset = reset;
+        this.dispose = dispose;
+    }
+
+    /**
+     * Waits, if leases are capped, until fewer than {@code maxLeased} objects are in use.
+     */
+    Lease acquire() {
+        if (leases != null) {
+            leases.acquireUninterruptibly();
+        }
+        T object = idle.poll();
+        if (object == null) {
+            try {
+                object = factory.get();
+            } catch (RuntimeException | Error e) {
+                releaseLease();
+                throw e;
+            }
+            created.incrementAndGet();
+        }
+        return new Lease(object);
+    }
+
+    int idleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of objects the pool has created, which stays flat once it is warm
+     */
+    long createdCount() {
+        return created.get();
+    }
+
+    /**
+     * Disposes of the idle objects.
+     */
+    void clear() {
+        for (T object = idle.poll(); object != null; object = idle.poll()) {
+            dispose.accept(object);
+        }
+    }
+
+    private void release(T object) {
+        try {
+            reset.accept(object);
+            if (!idle.offer(object)) {
+                dispose.accept(object);
+            }
+        } finally {
+            releaseLease();
+        }
+    }
+
+    private void releaseLease() {
+        if (leases != null) {
+            leases.release();
+        }
+    }
+
+    class Lease implements AutoCloseable {
+
+        private final T object;
+        private boolean released;
+
+        private Lease(T object) {
+            this.object = object;
+        }
+
+        T get() {
+            if (released) {
+                throw new IllegalStateException("lease released");
+            }
+            return object;
+        }
+
+        /**
+         * Returns the object to the pool; only the first call does.
+         */
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(object);
+            }
+        }
+    }
+}
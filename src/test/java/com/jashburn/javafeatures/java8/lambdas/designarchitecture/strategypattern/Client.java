@@ -2,8 +2,12 @@ package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypatte
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -21,11 +25,13 @@ import java.util.zip.ZipOutputStream;
  * argument of type <code>OutputStream</code>, and returns an instance of type
  * <code>OutputStream</code> (which <code>GZIPOutputStream</code> is a subclass.) Therefore, when it
  * is executed in {@link Compressor#compress(Path, File)}, <code>strategy.compress(outStream)</code>
- * results in the creation of an instance of <code>GZIPOutputStream</code>, which is then passed in
- * as an argument to {@link Files#copy(Path, java.io.OutputStream)}.
+ * results in the creation of an instance of <code>GZIPOutputStream</code>, which the input file is
+ * then copied to (by the default {@link CompressionStrategy#compress(FileChannel, FileChannel)}).
  */
 public class Client {
 
+    private static final CompressionStrategy POOLED_GZIP = new PooledGzipCompression();
+
     void compressWithZip(Path inFile, File outFile) throws IOException {
         executeCompression(inFile, outFile, ZipOutputStream::new);
     }
@@ -34,6 +40,48 @@ public class Client {
         executeCompression(inFile, outFile, GZIPOutputStream::new);
     }
 
+    /**
+     * A strategy with state (the format and the pool to compress on) is an object rather than a
+     * constructor reference, but the context uses it in the same way.
+     */
+    void compressWithParallelGZIP(Path inFile, File outFile) throws IOException {
+        executeCompression(inFile, outFile,
+                new ParallelGzipCompression(ParallelGzipCompression.Format.SINGLE_STREAM));
+    }
+
+    void compressWithMappedGZIP(Path inFile, File outFile) throws IOException {
+        executeCompression(inFile, outFile, new MappedGzipCompression());
+    }
+
+    /**
+     * Reuses the strategy, and with it its pooled deflaters, across calls.
+     */
+    void compressWithPooledGZIP(Path inFile, File outFile) throws IOException {
+        executeCompression(inFile, outFile, POOLED_GZIP);
+    }
+
+    /**
+     * Stores the blocks of the file that do not look compressible, such as embedded media.
+     */
+    void compressAdaptively(Path inFile, File outFile) throws IOException {
+        executeCompression(inFile, outFile,
+                new AdaptiveCompression(AdaptiveCompression.Granularity.BLOCK));
+    }
+
+    /**
+     * {@link #compressWithZip(Path, File)} only works for an empty file: a
+     * <code>ZipOutputStream</code> rejects data written before an entry is started, which a
+     * <code>CompressionStrategy</code> cannot do. Archiving a whole directory, with an entry per
+     * file, takes a writer of its own.
+     */
+    void zipInParallel(Path directory, File outFile) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        new ParallelZipWriter().write(directory, files, outFile.toPath());
+    }
+
     private void executeCompression(Path inFile, File outFile, CompressionStrategy strategy)
             throws IOException {
         Compressor compressor = new Compressor(strategy);
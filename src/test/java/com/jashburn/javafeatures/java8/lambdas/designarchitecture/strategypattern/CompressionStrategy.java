@@ -2,6 +2,8 @@ package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypatte
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 
 /**
  * Strategy
@@ -11,4 +13,25 @@ import java.io.OutputStream;
 public interface CompressionStrategy {
 
     public OutputStream compress(OutputStream data) throws IOException;
+
+    /**
+     * Compresses the whole of {@code in} into {@code out}. By default, the input is streamed
+     * through {@link #compress(OutputStream)}; strategies that can work on the channels directly
+     * (e.g., by memory-mapping the input) override this.
+     */
+    public default void compress(FileChannel in, FileChannel out) throws IOException {
+        try (OutputStream compressed = compress(Channels.newOutputStream(out))) {
+            Channels.newInputStream(in).transferTo(compressed);
+        }
+    }
+
+    /**
+     * Roughly how many bytes a stream of this strategy holds while it is open, for contexts that
+     * bound the memory of concurrent compressions. By default, a {@code Deflater}'s native state
+     * (around 256 KiB at the default level) and a 64 KiB buffer; strategies that buffer blocks of
+     * input override this.
+     */
+    public default long bufferBytes() {
+        return 320 * 1024;
+    }
 }
@@ -1,11 +1,10 @@
 package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Context
@@ -18,9 +17,16 @@ public class Compressor {
         this.strategy = strategy;
     }
 
+    /**
+     * Hands the strategy the files as channels, which by default it streams through its
+     * {@code OutputStream}, closing that so that it writes out what it has buffered and any
+     * trailer, e.g., the CRC at the end of a gzip file.
+     */
     public void compress(Path inFile, File outFile) throws IOException {
-        try (OutputStream outStream = new FileOutputStream(outFile)) {
-            Files.copy(inFile, strategy.compress(outStream));
+        try (FileChannel in = FileChannel.open(inFile, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            strategy.compress(in, out);
         }
     }
 }
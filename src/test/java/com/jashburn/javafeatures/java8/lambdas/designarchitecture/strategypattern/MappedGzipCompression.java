@@ -0,0 +1,104 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Concrete gzip strategy that, given the files as channels, compresses without copying the input
+ * onto the Java heap:
+ * <ul>
+ * <li>the input is memory-mapped in windows of up to {@link #MAP_WINDOW} bytes (a mapping is
+ * limited to 2 GB), and the mapped buffer is handed straight to
+ * {@link Deflater#setInput(ByteBuffer)} and {@link CRC32#update(ByteBuffer)}, which read it from
+ * the page cache in native code</li>
+ * <li>the deflater writes into a direct buffer, which is written to the output channel without a
+ * copy into a temporary native buffer, as a heap buffer would need</li>
+ * </ul>
+ * The default, stream-based path copies each chunk of the file from the page cache into a heap
+ * array, then into the deflater, and the output back out of a heap array; here the only heap
+ * allocations are a few small objects per file. The output is a single gzip member, like
+ * {@code GZIPOutputStream}'s.
+ * <p>
+ * Given a stream, this falls back to {@code GZIPOutputStream}.
+ */
+class MappedGzipCompression implements CompressionStrategy {
+
+    static final long MAP_WINDOW = 1L << 30;
+
+    private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+
+    private final int level;
+
+    MappedGzipCompression() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    MappedGzipCompression(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream data) throws IOException {
+        return new GZIPOutputStream(data, OUTPUT_BUFFER_SIZE);
+    }
+
+    @Override
+    public void compress(FileChannel in, FileChannel out) throws IOException {
+        ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(level, true);
+        try {
+            output.put(ParallelGzipCompression.HEADER);
+            long size = in.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer window =
+                        in.map(MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                crc.update(window.duplicate());
+                deflater.setInput(window);
+                while (!deflater.needsInput()) {
+                    deflateInto(deflater, output, out);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflateInto(deflater, output, out);
+            }
+            if (output.remaining() < 8) {
+                drain(output, out);
+            }
+            output.order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt((int) crc.getValue())
+                    .putInt((int) size);
+            drain(output, out);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Deflates into the free space of {@code output}, draining it to the channel first if full.
+     */
+    private static void deflateInto(Deflater deflater, ByteBuffer output, FileChannel out)
+            throws IOException {
+        if (!output.hasRemaining()) {
+            drain(output, out);
+        }
+        deflater.deflate(output);
+    }
+
+    private static void drain(ByteBuffer output, FileChannel out) throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            out.write(output);
+        }
+        output.clear();
+    }
+}
@@ -0,0 +1,70 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.gunzip;
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.sampleData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedGzipCompressionDemo {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readableByGZIPInputStream() throws IOException {
+        Compressor compressor = new Compressor(new MappedGzipCompression());
+        for (int length : new int[] {0, 1, 1000, 256 * 1024, 3_000_001}) {
+            byte[] data = sampleData(length);
+            Path inFile = Files.write(directory.resolve("in" + length), data);
+            Path outFile = directory.resolve("in" + length + ".gz");
+
+            compressor.compress(inFile, outFile.toFile());
+
+            assertArrayEquals(data, gunzip(Files.readAllBytes(outFile)), length + " bytes");
+        }
+    }
+
+    @Test
+    void compressorWithMappedStrategy() throws IOException {
+        Path inFile = Files.write(directory.resolve("in"), sampleData(1_000_000));
+        Path outFile = directory.resolve("in.gz");
+
+        new Client().compressWithMappedGZIP(inFile, outFile.toFile());
+
+        assertArrayEquals(Files.readAllBytes(inFile), gunzip(Files.readAllBytes(outFile)));
+    }
+
+    /**
+     * Compares time and heap allocated by the compressing thread with {@code GZIPOutputStream}
+     * (through the default, stream-based channel path) on a 64 MB file.
+     */
+    @Test
+    void throughputAndHeapAllocation() throws IOException {
+        int length = 64 << 20;
+        Path inFile = Files.write(directory.resolve("in"), sampleData(length));
+        Path outFile = directory.resolve("in.gz");
+        CompressionStrategy[] strategies = {GZIPOutputStream::new, new MappedGzipCompression()};
+        String[] names = {"GZIPOutputStream", "memory-mapped"};
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (int run = 0; run < 2; run++) {
+            for (int i = 0; i < strategies.length; i++) {
+                Compressor compressor = new Compressor(strategies[i]);
+                long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                compressor.compress(inFile, outFile.toFile());
+                long nanos = System.nanoTime() - start;
+                long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                System.out.printf("%s: %.0f MB/s, %d bytes allocated%n", names[i],
+                        length * 1e3 / nanos, allocated);
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Concrete strategy that compresses blocks of the input in parallel, in one of two gzip layouts:
+ * <ul>
+ * <li>{@link Format#MULTI_MEMBER}: each block is a complete gzip member, with its own header and
+ * CRC. Concatenated members are a valid gzip file (RFC 1952), which {@code gunzip} and
+ * {@code GZIPInputStream} decompress as one</li>
+ * <li>{@link Format#SINGLE_STREAM}: one gzip member, as {@code pigz} writes it. Each block is
+ * raw-deflated with the last 32 KiB of the previous block as its dictionary, so matches can
+ * reach back across the block boundary, and ends with a sync flush (an empty stored block) so
+ * that the blocks' output concatenates into one deflate stream. The CRC of the whole input is
+ * computed as it is written</li>
+ * </ul>
+ * Blocks are deflated on an {@link Executor} (the common pool by default), and written to the
+ * output in order. At most {@code maxBlocksInFlight} blocks are buffered or being compressed at
+ * once: writing another waits for the oldest to be written, which bounds memory use. The
+ * deflaters are reused across blocks, streams and instances from a {@link BoundedPool} per level,
+ * shared with {@link BlockIndexedCompression}, so a short-lived instance leaves no idle deflaters
+ * of its own behind.
+ */
+class ParallelGzipCompression implements CompressionStrategy {
+
+    enum Format {
+        MULTI_MEMBER, SINGLE_STREAM
+    }
+
+    static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The deflate window: back-references reach at most this far.
+     */
+    static final int DICTIONARY_SIZE = 32 * 1024;
+    /**
+     * A gzip member header with no name, time or flags, for an unknown OS.
+     */
+    static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0,
+            (byte) 0xff};
+
+    /**
+     * Raw deflaters, by level from {@code Deflater.DEFAULT_COMPRESSION}.
+     */
+    private static final List<BoundedPool<Deflater>> RAW_DEFLATERS = IntStream
+            .rangeClosed(Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION)
+            .mapToObj(level -> new BoundedPool<Deflater>(
+                    2 * Runtime.getRuntime().availableProcessors() + 1,
+                    () -> new Deflater(level, true), Deflater::reset, Deflater::end))
+            .collect(Collectors.toList());
+
+    private final Format format;
+    private final int blockSize;
+    private final Executor executor;
+    private final int maxBlocksInFlight;
+    private final BoundedPool<Deflater> deflaters;
+
+    ParallelGzipCompression(Format format) {
+        this(format, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool(),
+                2 * ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    ParallelGzipCompression(Format format, int level, int blockSize, Executor executor,
+            int maxBlocksInFlight) {
+        if (blockSize < 1 || maxBlocksInFlight < 1) {
+            throw new IllegalArgumentException("block size and blocks in flight must be positive");
+        }
+        this.format = format;
+        this.blockSize = blockSize;
+        this.executor = executor;
+        this.maxBlocksInFlight = maxBlocksInFlight;
+        deflaters = rawDeflaters(level);
+    }
+
+    @Override
+    public OutputStream compress(OutputStream data) throws IOException {
+        return new ParallelGzipOutputStream(data);
+    }
+
+    /**
+     * The block being filled, and the input and output of each block in flight, with a deflater
+     * each.
+     */
+    @Override
+    public long bufferBytes() {
+        long perBlock = 2L * blockSize + CompressionStrategy.super.bufferBytes();
+        return blockSize + maxBlocksInFlight * perBlock;
+    }
+
+    private class ParallelGzipOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        private final CRC32 crc = new CRC32();
+        private byte[] block = new byte[blockSize];
+        private int blockLength;
+        private byte[] dictionary;
+        private long totalLength;
+        private boolean closed;
+
+        ParallelGzipOutputStream(OutputStream out) throws IOException {
+            this.out = out;
+            if (format == Format.SINGLE_STREAM) {
+                out.write(HEADER);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+            while (length > 0) {
+                int copied = Math.min(length, blockSize - blockLength);
+                System.arraycopy(bytes, offset, block, blockLength, copied);
+                blockLength += copied;
+                offset += copied;
+                length -= copied;
+                if (blockLength == blockSize) {
+                    submitBlock(false);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                // An empty input still needs one (empty) member or final deflate block
+                if (blockLength > 0 || format == Format.SINGLE_STREAM || totalLength == 0) {
+                    submitBlock(true);
+                }
+                while (!pending.isEmpty()) {
+                    writeOldest();
+                }
+                if (format == Format.SINGLE_STREAM) {
+                    writeTrailer(out, crc.getValue(), totalLength);
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        private void submitBlock(boolean last) throws IOException {
+            byte[] input = Arrays.copyOf(block, blockLength);
+            byte[] blockDictionary = dictionary;
+            totalLength += blockLength;
+            if (format == Format.SINGLE_STREAM) {
+                crc.update(input);
+                // The next block's dictionary: the end of this block, topped up from the one before
+                dictionary = lastBytes(blockDictionary, input);
+            }
+            blockLength = 0;
+
+            pending.add(CompletableFuture.supplyAsync(() -> format == Format.SINGLE_STREAM
+                    ? deflateRaw(input, blockDictionary, last)
+                    : gzipMember(input), executor));
+            while (pending.size() >= maxBlocksInFlight) {
+                writeOldest();
+            }
+        }
+
+        private void writeOldest() throws IOException {
+            out.write(pending.remove().join());
+        }
+    }
+
+    private static byte[] lastBytes(byte[] previous, byte[] block) {
+        if (block.length >= DICTIONARY_SIZE || previous == null) {
+            return Arrays.copyOfRange(block, Math.max(0, block.length - DICTIONARY_SIZE),
+                    block.length);
+        }
+        int fromPrevious = Math.min(previous.length, DICTIONARY_SIZE - block.length);
+        byte[] bytes = Arrays.copyOfRange(previous, previous.length - fromPrevious,
+                previous.length + block.length);
+        System.arraycopy(block, 0, bytes, fromPrevious, block.length);
+        return bytes;
+    }
+
+    private byte[] deflateRaw(byte[] input, byte[] dictionary, boolean last) {
+        try (BoundedPool<Deflater>.Lease lease = deflaters.acquire()) {
+            Deflater deflater = lease.get();
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 64);
+            if (last) {
+                deflater.finish();
+            }
+            deflateAll(deflater, output, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            return output.toByteArray();
+        }
+    }
+
+    private byte[] gzipMember(byte[] input) {
+        try (BoundedPool<Deflater>.Lease lease = deflaters.acquire()) {
+            Deflater deflater = lease.get();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 64);
+            output.write(HEADER, 0, HEADER.length);
+            deflater.setInput(input);
+            deflater.finish();
+            deflateAll(deflater, output, Deflater.NO_FLUSH);
+            CRC32 crc = new CRC32();
+            crc.update(input);
+            writeTrailer(output, crc.getValue(), input.length);
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new AssertionError("ByteArrayOutputStream does not throw", e);
+        }
+    }
+
+    /**
+     * @return the shared pool of raw deflaters (no zlib header or trailer) at {@code level}
+     */
+    static BoundedPool<Deflater> rawDeflaters(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+        return RAW_DEFLATERS.get(level - Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Deflates until the deflater is finished or, when not finishing, has consumed all its input
+     * and flushed everything.
+     */
+    static void deflateAll(Deflater deflater, ByteArrayOutputStream output, int flush) {
+        byte[] buffer = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer, 0, buffer.length, flush);
+            output.write(buffer, 0, length);
+            if (length < buffer.length && deflater.needsInput() && flush != Deflater.NO_FLUSH) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Writes the CRC-32 and the length modulo 2<sup>32</sup>, little-endian.
+     */
+    static void writeTrailer(OutputStream out, long crc, long length) throws IOException {
+        byte[] trailer = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (crc >>> (8 * i));
+            trailer[4 + i] = (byte) (length >>> (8 * i));
+        }
+        out.write(trailer);
+    }
+}
@@ -0,0 +1,136 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompression.Format;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelGzipCompressionDemo {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Round trips through {@code GZIPInputStream}, for sizes around the block size, in both
+     * formats.
+     */
+    @Test
+    void readableByGZIPInputStream() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (Format format : Format.values()) {
+                CompressionStrategy strategy = new ParallelGzipCompression(format,
+                        Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE, executor, 4);
+                for (int length : new int[] {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1,
+                        10 * BLOCK_SIZE + 123}) {
+                    byte[] data = sampleData(length);
+                    assertArrayEquals(data, gunzip(compress(strategy, data)),
+                            format + ", " + length + " bytes");
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Instances share their deflaters: once the pool is warm, new instances create none.
+     */
+    @Test
+    void deflatersSharedAcrossInstances() throws IOException {
+        byte[] data = sampleData(3 * BLOCK_SIZE);
+        BoundedPool<Deflater> pool = ParallelGzipCompression.rawDeflaters(Deflater.BEST_SPEED);
+        compress(new ParallelGzipCompression(Format.SINGLE_STREAM, Deflater.BEST_SPEED,
+                BLOCK_SIZE, Runnable::run, 1), data);
+        long created = pool.createdCount();
+
+        for (int i = 0; i < 10; i++) {
+            CompressionStrategy strategy = i % 2 == 0
+                    ? new ParallelGzipCompression(Format.MULTI_MEMBER, Deflater.BEST_SPEED,
+                            BLOCK_SIZE, Runnable::run, 1)
+                    : new BlockIndexedCompression(Deflater.BEST_SPEED, BLOCK_SIZE);
+            compress(strategy, data);
+        }
+        assertEquals(created, pool.createdCount());
+    }
+
+    @Test
+    void compressorWithParallelStrategy() throws IOException {
+        Path inFile = Files.write(directory.resolve("in"), sampleData(3_000_000));
+        Path outFile = directory.resolve("in.gz");
+
+        new Client().compressWithParallelGZIP(inFile, outFile.toFile());
+
+        assertArrayEquals(Files.readAllBytes(inFile), gunzip(Files.readAllBytes(outFile)));
+    }
+
+    /**
+     * Compares time and size with {@code GZIPOutputStream} on 16 MB of text-like data. With the
+     * previous block as dictionary, the single stream is barely larger than the sequential
+     * output.
+     */
+    @Test
+    void throughputAndRatio() throws IOException {
+        byte[] data = sampleData(16 << 20);
+        CompressionStrategy[] strategies = {GZIPOutputStream::new,
+                new ParallelGzipCompression(Format.MULTI_MEMBER),
+                new ParallelGzipCompression(Format.SINGLE_STREAM)};
+        String[] names = {"GZIPOutputStream", "parallel multi-member", "parallel single stream"};
+
+        for (int run = 0; run < 2; run++) {
+            for (int i = 0; i < strategies.length; i++) {
+                long start = System.nanoTime();
+                int compressedLength = compress(strategies[i], data).length;
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%s: %.0f MB/s, %d bytes%n", names[i],
+                        data.length * 1e3 / nanos, compressedLength);
+            }
+        }
+    }
+
+    /**
+     * Words from a small vocabulary: compressible, but not trivially.
+     */
+    static byte[] sampleData(int length) {
+        String[] words = {"album ", "track ", "artist ", "John ", "Coltrane ", "supreme ",
+                "love ", "the ", "a ", "sample ", "many ", "short ", "four ", "UK\n"};
+        Random random = new Random(length);
+        ByteArrayOutputStream data = new ByteArrayOutputStream(length + 16);
+        while (data.size() < length) {
+            data.writeBytes(words[random.nextInt(words.length)].getBytes());
+        }
+        byte[] bytes = data.toByteArray();
+        return Arrays.copyOf(bytes, length);
+    }
+
+    static byte[] compress(CompressionStrategy strategy, byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = strategy.compress(compressed)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    static byte[] gunzip(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes many files into a ZIP archive, deflating the entries in parallel, unlike
+ * {@code ZipOutputStream}, which deflates one entry at a time as it is written.
+ * <ul>
+ * <li>each entry is deflated on an {@link Executor} (the common pool by default) into memory or,
+ * once its compressed data outgrows {@code spillThreshold}, into a spill file next to the
+ * archive. At most {@code maxEntriesInFlight} entries are being deflated or waiting to be written
+ * at once, which bounds memory use</li>
+ * <li>the entries are written to the archive in order, each as soon as it and those before it are
+ * done. As its CRC and sizes are known by then, its local header holds them, with no data
+ * descriptor after the data</li>
+ * <li>the central directory follows the entries. ZIP64 extra fields and end records are added
+ * where sizes, offsets or the entry count do not fit the original fields, or always, with
+ * {@link Zip64#ALWAYS}</li>
+ * </ul>
+ * Entry names are the files' paths relative to a base directory, with {@code /} separators, in
+ * UTF-8 (general purpose flag bit 11). They are checked before anything is written: a name must
+ * fit the 16-bit length field, and appear once. A write that fails deletes the partial archive
+ * and the spill files.
+ * <p>
+ * Deflaters come from the pool shared with {@link ParallelGzipCompression}, so a writer made per
+ * archive leaves no idle deflaters of its own behind.
+ */
+class ParallelZipWriter {
+
+    enum Zip64 {
+        AS_NEEDED, ALWAYS
+    }
+
+    static final int DEFAULT_SPILL_THRESHOLD = 8 << 20;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final short ZIP64_EXTRA_ID = 0x0001;
+    private static final short VERSION = 20;
+    private static final short ZIP64_VERSION = 45;
+    private static final short UTF8_FLAG = 0x0800;
+    private static final short DEFLATED = 8;
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    private final Executor executor;
+    private final int maxEntriesInFlight;
+    private final int spillThreshold;
+    private final Zip64 zip64;
+    private final BoundedPool<Deflater> deflaters;
+    private final BoundedPool<byte[]> buffers;
+
+    ParallelZipWriter() {
+        this(Deflater.DEFAULT_COMPRESSION, ForkJoinPool.commonPool(),
+                2 * ForkJoinPool.getCommonPoolParallelism() + 1, DEFAULT_SPILL_THRESHOLD,
+                Zip64.AS_NEEDED);
+    }
+
+    ParallelZipWriter(int level, Executor executor, int maxEntriesInFlight, int spillThreshold,
+            Zip64 zip64) {
+        if (maxEntriesInFlight < 1) {
+            throw new IllegalArgumentException("entries in flight must be positive");
+        }
+        this.executor = executor;
+        this.maxEntriesInFlight = maxEntriesInFlight;
+        this.spillThreshold = spillThreshold;
+        this.zip64 = zip64;
+        deflaters = ParallelGzipCompression.rawDeflaters(level);
+        buffers = new BoundedPool<>(2 * maxEntriesInFlight, () -> new byte[BUFFER_SIZE],
+                buffer -> {
+                }, buffer -> {
+                });
+    }
+
+    /**
+     * Writes {@code files}, in order, into a new archive {@code zipFile}, naming each by its path
+     * relative to {@code base}.
+     *
+     * @throws IllegalArgumentException if a name is longer than 65535 bytes in UTF-8
+     * @throws ZipException if two files have the same name
+     */
+    void write(Path base, List<Path> files, Path zipFile) throws IOException {
+        List<String> names = entryNames(base, files);
+        Path spillDirectory = zipFile.toAbsolutePath().getParent();
+        Deque<CompletableFuture<DeflatedEntry>> pending = new ArrayDeque<>();
+        List<DeflatedEntry> written = new ArrayList<>(files.size());
+        boolean complete = false;
+        try (ZipOutput out = new ZipOutput(zipFile)) {
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                String name = names.get(i);
+                pending.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return deflate(name, file, spillDirectory);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+                while (pending.size() >= maxEntriesInFlight) {
+                    written.add(writeEntry(out, join(pending.remove())));
+                }
+            }
+            while (!pending.isEmpty()) {
+                written.add(writeEntry(out, join(pending.remove())));
+            }
+            writeCentralDirectory(out, written);
+            complete = true;
+        } finally {
+            // After a failure, delete what the entries still in flight have spilled, and the
+            // archive so far
+            for (CompletableFuture<DeflatedEntry> entry : pending) {
+                DeflatedEntry deflated = entry.handle((result, e) -> result).join();
+                if (deflated != null) {
+                    deflated.deleteSpill();
+                }
+            }
+            if (!complete) {
+                Files.deleteIfExists(zipFile);
+            }
+        }
+    }
+
+    private static List<String> entryNames(Path base, List<Path> files) throws ZipException {
+        List<String> names = new ArrayList<>(files.size());
+        Set<String> seen = new HashSet<>();
+        for (Path file : files) {
+            String name = base.relativize(file).toString().replace(File.separatorChar, '/');
+            if (name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_LENGTH) {
+                throw new IllegalArgumentException("entry name too long: " + file);
+            }
+            if (!seen.add(name)) {
+                throw new ZipException("duplicate entry: " + name);
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    private static DeflatedEntry join(CompletableFuture<DeflatedEntry> entry) throws IOException {
+        try {
+            return entry.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    private DeflatedEntry deflate(String name, Path file, Path spillDirectory)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        SpillingOutputStream compressed = new SpillingOutputStream(spillDirectory);
+        try (BoundedPool<Deflater>.Lease deflaterLease = deflaters.acquire();
+                BoundedPool<byte[]>.Lease inputLease = buffers.acquire();
+                BoundedPool<byte[]>.Lease outputLease = buffers.acquire();
+                InputStream in = Files.newInputStream(file);
+                compressed) {
+            Deflater deflater = deflaterLease.get();
+            byte[] input = inputLease.get();
+            byte[] output = outputLease.get();
+            for (int read = in.read(input); read >= 0; read = in.read(input)) {
+                crc.update(input, 0, read);
+                size += read;
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    compressed.write(output, 0, deflater.deflate(output));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed.write(output, 0, deflater.deflate(output));
+            }
+        } catch (IOException | RuntimeException e) {
+            compressed.deleteSpill();
+            throw e;
+        }
+        LocalDateTime modified = LocalDateTime.ofInstant(
+                Files.getLastModifiedTime(file).toInstant(), ZoneId.systemDefault());
+        return new DeflatedEntry(name, crc.getValue(), size, compressed, dosDateTime(modified));
+    }
+
+    /**
+     * Writes the entry, deleting its spill file whether or not that succeeds: the entry is no
+     * longer pending, so nothing else would.
+     */
+    private DeflatedEntry writeEntry(ZipOutput out, DeflatedEntry entry) throws IOException {
+        try {
+            writeLocalEntry(out, entry);
+        } catch (IOException | RuntimeException e) {
+            entry.deleteSpill();
+            throw e;
+        }
+        return entry;
+    }
+
+    private void writeLocalEntry(ZipOutput out, DeflatedEntry entry) throws IOException {
+        entry.offset = out.position;
+        boolean zip64Sizes = zip64 == Zip64.ALWAYS || entry.size >= ZIP64_MAGIC
+                || entry.compressedSize() >= ZIP64_MAGIC;
+        ByteBuffer header = littleEndian(30 + entry.name.length + (zip64Sizes ? 20 : 0));
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort(zip64Sizes ? ZIP64_VERSION : VERSION)
+                .putShort(UTF8_FLAG)
+                .putShort(DEFLATED)
+                .putInt(entry.dosDateTime)
+                .putInt((int) entry.crc)
+                .putInt((int) (zip64Sizes ? ZIP64_MAGIC : entry.compressedSize()))
+                .putInt((int) (zip64Sizes ? ZIP64_MAGIC : entry.size))
+                .putShort((short) entry.name.length)
+                .putShort((short) (zip64Sizes ? 20 : 0))
+                .put(entry.name);
+        if (zip64Sizes) {
+            header.putShort(ZIP64_EXTRA_ID)
+                    .putShort((short) 16)
+                    .putLong(entry.size)
+                    .putLong(entry.compressedSize());
+        }
+        out.write(header);
+        entry.compressed.writeTo(out);
+    }
+
+    private void writeCentralDirectory(ZipOutput out, List<DeflatedEntry> entries)
+            throws IOException {
+        long directoryOffset = out.position;
+        for (DeflatedEntry entry : entries) {
+            boolean always = zip64 == Zip64.ALWAYS;
+            boolean zip64Size = always || entry.size >= ZIP64_MAGIC;
+            boolean zip64CompressedSize = always || entry.compressedSize() >= ZIP64_MAGIC;
+            boolean zip64Offset = always || entry.offset >= ZIP64_MAGIC;
+            int extraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0)
+                    + (zip64Offset ? 8 : 0);
+            if (extraLength > 0) {
+                extraLength += 4;
+            }
+            short version = extraLength > 0 ? ZIP64_VERSION : VERSION;
+            ByteBuffer header = littleEndian(46 + entry.name.length + extraLength);
+            header.putInt(CENTRAL_HEADER_SIGNATURE)
+                    .putShort(version) // Made by
+                    .putShort(version) // Needed to extract
+                    .putShort(UTF8_FLAG)
+                    .putShort(DEFLATED)
+                    .putInt(entry.dosDateTime)
+                    .putInt((int) entry.crc)
+                    .putInt((int) (zip64CompressedSize ? ZIP64_MAGIC : entry.compressedSize()))
+                    .putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size))
+                    .putShort((short) entry.name.length)
+                    .putShort((short) extraLength)
+                    .putShort((short) 0) // Comment length
+                    .putShort((short) 0) // Disk number
+                    .putShort((short) 0) // Internal attributes
+                    .putInt(0) // External attributes
+                    .putInt((int) (zip64Offset ? ZIP64_MAGIC : entry.offset))
+                    .put(entry.name);
+            if (extraLength > 0) {
+                header.putShort(ZIP64_EXTRA_ID).putShort((short) (extraLength - 4));
+                if (zip64Size) {
+                    header.putLong(entry.size);
+                }
+                if (zip64CompressedSize) {
+                    header.putLong(entry.compressedSize());
+                }
+                if (zip64Offset) {
+                    header.putLong(entry.offset);
+                }
+            }
+            out.write(header);
+        }
+        long directorySize = out.position - directoryOffset;
+        writeEnd(out, entries.size(), directoryOffset, directorySize);
+    }
+
+    private void writeEnd(ZipOutput out, long count, long directoryOffset, long directorySize)
+            throws IOException {
+        boolean zip64End = zip64 == Zip64.ALWAYS || count >= ZIP64_MAGIC_COUNT
+                || directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC;
+        if (zip64End) {
+            long zip64EndOffset = out.position;
+            out.write(littleEndian(56 + 20)
+                    .putInt(ZIP64_END_SIGNATURE)
+                    .putLong(44) // Size of the rest of the record
+                    .putShort(ZIP64_VERSION)
+                    .putShort(ZIP64_VERSION)
+                    .putInt(0) // This disk
+                    .putInt(0) // Disk with the central directory
+                    .putLong(count) // Entries on this disk
+                    .putLong(count)
+                    .putLong(directorySize)
+                    .putLong(directoryOffset)
+                    .putInt(ZIP64_LOCATOR_SIGNATURE)
+                    .putInt(0) // Disk with the ZIP64 end record
+                    .putLong(zip64EndOffset)
+                    .putInt(1)); // Total disks
+        }
+        short entries = (short) (zip64End ? ZIP64_MAGIC_COUNT : count);
+        out.write(littleEndian(22)
+                .putInt(END_SIGNATURE)
+                .putShort((short) 0) // This disk
+                .putShort((short) 0) // Disk with the central directory
+                .putShort(entries) // Entries on this disk
+                .putShort(entries)
+                .putInt((int) (zip64End ? ZIP64_MAGIC : directorySize))
+                .putInt((int) (zip64End ? ZIP64_MAGIC : directoryOffset))
+                .putShort((short) 0)); // Comment length
+    }
+
+    private static ByteBuffer littleEndian(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the MS-DOS date (high 16 bits) and time (low 16 bits), to 2 seconds, from 1980
+     */
+    private static int dosDateTime(LocalDateTime time) {
+        if (time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        int date = (time.getYear() - 1980) << 9 | time.getMonthValue() << 5
+                | time.getDayOfMonth();
+        int timeOfDay = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+        return date << 16 | timeOfDay;
+    }
+
+    private static class DeflatedEntry {
+
+        final byte[] name;
+        final long crc;
+        final long size;
+        final SpillingOutputStream compressed;
+        final int dosDateTime;
+        long offset;
+
+        DeflatedEntry(String name, long crc, long size, SpillingOutputStream compressed,
+                int dosDateTime) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.crc = crc;
+            this.size = size;
+            this.compressed = compressed;
+            this.dosDateTime = dosDateTime;
+        }
+
+        long compressedSize() {
+            return compressed.size;
+        }
+
+        void deleteSpill() throws IOException {
+            compressed.deleteSpill();
+        }
+    }
+
+    /**
+     * Buffers in memory up to {@code spillThreshold} bytes, then moves what it has to a temporary
+     * file and writes on into that.
+     */
+    private class SpillingOutputStream extends OutputStream {
+
+        private final Path spillDirectory;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path spill;
+        private OutputStream spillOut;
+        private long size;
+
+        SpillingOutputStream(Path spillDirectory) {
+            this.spillDirectory = spillDirectory;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (memory != null && memory.size() + length > spillThreshold) {
+                spill = Files.createTempFile(spillDirectory, "entry", ".deflate");
+                spillOut = new BufferedOutputStream(Files.newOutputStream(spill), BUFFER_SIZE);
+                memory.writeTo(spillOut);
+                memory = null;
+            }
+            (memory != null ? memory : spillOut).write(bytes, offset, length);
+            size += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spillOut != null) {
+                spillOut.close();
+            }
+        }
+
+        /**
+         * Writes the data to {@code out}, then deletes the spill file, if any.
+         */
+        void writeTo(OutputStream out) throws IOException {
+            if (memory != null) {
+                memory.writeTo(out);
+            } else {
+                Files.copy(spill, out);
+                deleteSpill();
+            }
+        }
+
+        void deleteSpill() throws IOException {
+            if (spill != null) {
+                close();
+                Files.deleteIfExists(spill);
+            }
+        }
+    }
+
+    /**
+     * The archive file, with the position of the next byte written to it, which the local
+     * headers' offsets are taken from.
+     */
+    private static class ZipOutput extends OutputStream {
+
+        private final OutputStream out;
+        long position;
+
+        ZipOutput(Path zipFile) throws IOException {
+            out = new BufferedOutputStream(Files.newOutputStream(zipFile), BUFFER_SIZE);
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            write(buffer.array(), 0, buffer.position());
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            position += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
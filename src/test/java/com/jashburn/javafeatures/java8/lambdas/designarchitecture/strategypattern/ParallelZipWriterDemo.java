@@ -0,0 +1,273 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.sampleData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelZipWriter.Zip64;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelZipWriterDemo {
+
+    private static final int SPILL_THRESHOLD = 64 * 1024;
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Reads the archive back by its central directory ({@code ZipFile}) and by its local headers
+     * ({@code ZipInputStream}), with and without ZIP64 records, for entries that are empty, small,
+     * and spilled to disk while deflated.
+     */
+    @Test
+    void readableByZipFileAndZipInputStream() throws IOException {
+        List<Path> files = createFiles(directory.resolve("in"), 40, 4 * SPILL_THRESHOLD);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (Zip64 zip64 : Zip64.values()) {
+                Path zipFile = directory.resolve(zip64 + ".zip");
+                new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION, executor, 4, SPILL_THRESHOLD,
+                        zip64).write(directory.resolve("in"), files, zipFile);
+
+                try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+                    assertEquals(files.size(), zip.size());
+                    for (Path file : files) {
+                        ZipEntry entry = zip.getEntry(entryName(file));
+                        byte[] data = Files.readAllBytes(file);
+                        assertEquals(data.length, entry.getSize());
+                        assertEquals(crc(data), entry.getCrc());
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            assertArrayEquals(data, in.readAllBytes(), entry.getName());
+                        }
+                    }
+                }
+                try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zipFile))) {
+                    for (Path file : files) {
+                        assertEquals(entryName(file), in.getNextEntry().getName());
+                        assertArrayEquals(Files.readAllBytes(file), in.readAllBytes());
+                    }
+                    assertNull(in.getNextEntry());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(List.of(), spillFiles());
+    }
+
+    @Test
+    void emptyArchive() throws IOException {
+        Path zipFile = directory.resolve("empty.zip");
+        new ParallelZipWriter().write(directory, List.of(), zipFile);
+
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            assertEquals(0, zip.size());
+        }
+    }
+
+    /**
+     * A missing file fails the archive, and leaves neither it nor spill files behind.
+     */
+    @Test
+    void failsOnMissingFile() throws IOException {
+        List<Path> files = createFiles(directory.resolve("in"), 10, 4 * SPILL_THRESHOLD);
+        files.add(5, directory.resolve("in").resolve("missing"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ParallelZipWriter writer = new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION,
+                    executor, 4, SPILL_THRESHOLD, Zip64.AS_NEEDED);
+
+            assertThrows(NoSuchFileException.class, () -> writer.write(directory.resolve("in"),
+                    files, directory.resolve("a.zip")));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(List.of(), spillFiles());
+        assertFalse(Files.exists(directory.resolve("a.zip")));
+    }
+
+    /**
+     * An archive that cannot be written, here because the disk is full, leaves no spill files
+     * behind, including that of the entry being written when it failed.
+     */
+    @Test
+    void failsOnFullDisk() throws IOException {
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(full), "needs /dev/full");
+        List<Path> files = createFiles(directory.resolve("in"), 10, 4 * SPILL_THRESHOLD);
+        Path zipFile = Files.createSymbolicLink(directory.resolve("full.zip"), full);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ParallelZipWriter writer = new ParallelZipWriter(Deflater.DEFAULT_COMPRESSION,
+                    executor, 4, SPILL_THRESHOLD, Zip64.AS_NEEDED);
+
+            assertThrows(IOException.class,
+                    () -> writer.write(directory.resolve("in"), files, zipFile));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(List.of(), spillFiles());
+        assertFalse(Files.exists(zipFile, LinkOption.NOFOLLOW_LINKS));
+    }
+
+    /**
+     * Names that do not fit the header, or that repeat, are rejected before the archive is
+     * written.
+     */
+    @Test
+    void rejectsInvalidNames() throws IOException {
+        Path in = directory.resolve("in");
+        List<Path> files = createFiles(in, 3, 100);
+        Path zipFile = directory.resolve("a.zip");
+        ParallelZipWriter writer = new ParallelZipWriter();
+
+        List<Path> duplicated = new ArrayList<>(files);
+        duplicated.add(files.get(1));
+        assertThrows(ZipException.class, () -> writer.write(in, duplicated, zipFile));
+
+        Path longName = in.resolve("d/".repeat(MAX_NAME_LENGTH / 2) + "ff");
+        assertThrows(IllegalArgumentException.class,
+                () -> writer.write(in, List.of(longName), zipFile));
+        assertFalse(Files.exists(zipFile));
+
+        // The longest name is accepted, and the file only fails to open, as its path is too long
+        Path longestName = in.resolve("d/".repeat(MAX_NAME_LENGTH / 2) + "f");
+        assertThrows(FileSystemException.class,
+                () -> writer.write(in, List.of(longestName), zipFile));
+    }
+
+    /**
+     * Writers share their deflaters: once the pool is warm, a writer per archive creates none.
+     */
+    @Test
+    void deflatersSharedAcrossWriters() throws IOException {
+        List<Path> files = createFiles(directory.resolve("in"), 10, 4 * SPILL_THRESHOLD);
+        BoundedPool<Deflater> pool = ParallelGzipCompression.rawDeflaters(Deflater.BEST_SPEED);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            long created = -1;
+            for (int i = 0; i < 5; i++) {
+                new ParallelZipWriter(Deflater.BEST_SPEED, executor, 2, SPILL_THRESHOLD,
+                        Zip64.AS_NEEDED).write(directory.resolve("in"), files,
+                                directory.resolve("a.zip"));
+                if (i == 0) {
+                    created = pool.createdCount();
+                }
+            }
+            assertEquals(created, pool.createdCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void zipInParallel() throws IOException {
+        List<Path> files = createFiles(directory.resolve("in"), 20, 100_000);
+        Path zipFile = directory.resolve("in.zip");
+
+        new Client().zipInParallel(directory.resolve("in"), zipFile.toFile());
+
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            assertEquals(files.size(), zip.size());
+            for (Path file : files) {
+                assertNotNull(zip.getEntry(entryName(file)));
+            }
+        }
+    }
+
+    /**
+     * Compares time and size with {@code ZipOutputStream} on 32 files of 1 MB.
+     */
+    @Test
+    void throughputAgainstZipOutputStream() throws IOException {
+        Path in = directory.resolve("in");
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            files.add(Files.write(Files.createDirectories(in).resolve("f" + i),
+                    sampleData((1 << 20) + i)));
+        }
+
+        for (int run = 0; run < 2; run++) {
+            Path sequential = directory.resolve("sequential.zip");
+            long start = System.nanoTime();
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(sequential))) {
+                for (Path file : files) {
+                    out.putNextEntry(new ZipEntry(entryName(file)));
+                    Files.copy(file, out);
+                }
+            }
+            System.out.printf("ZipOutputStream: %.0f ms, %d bytes%n",
+                    (System.nanoTime() - start) / 1e6, Files.size(sequential));
+
+            Path parallel = directory.resolve("parallel.zip");
+            start = System.nanoTime();
+            new ParallelZipWriter().write(in, files, parallel);
+            System.out.printf("parallel: %.0f ms, %d bytes%n", (System.nanoTime() - start) / 1e6,
+                    Files.size(parallel));
+        }
+    }
+
+    /**
+     * Creates {@code count} files in nested directories, of sizes up to {@code maxSize}, with the
+     * first one empty and every fifth one random (incompressible).
+     */
+    private static List<Path> createFiles(Path root, int count, int maxSize) throws IOException {
+        Random random = new Random(count);
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = root.resolve("dir" + i % 3).resolve("f" + i + ".txt");
+            Files.createDirectories(file.getParent());
+            byte[] data = sampleData(i == 0 ? 0 : random.nextInt(maxSize));
+            if (i % 5 == 4) {
+                random.nextBytes(data);
+            }
+            files.add(Files.write(file, data));
+        }
+        return files;
+    }
+
+    private String entryName(Path file) {
+        Path root = file.getParent().getParent();
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    private List<Path> spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> spills = new ArrayList<>();
+            files.filter(file -> file.toString().endsWith(".deflate")).forEach(spills::add);
+            return spills;
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,113 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Concrete gzip strategy that reuses its {@code Deflater}s and buffers.
+ * <p>
+ * {@code GZIPOutputStream::new} creates a {@code Deflater} per call, whose native zlib state
+ * (around 256 KiB at the default level) is only freed when the stream is closed or, if it never
+ * is, when a cleaner gets to it after a GC, plus a heap buffer. At a high rate of small
+ * compressions, that is native memory churn and GC pressure. Here each stream leases a deflater
+ * and a buffer from {@link BoundedPool}s, and hands them back, reset, when it is closed, so that
+ * once the pools are warm a compression allocates only a few small objects. The pools keep at
+ * most {@code poolCapacity} of each idle, and end the deflaters beyond that straight away.
+ */
+class PooledGzipCompression implements CompressionStrategy {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BoundedPool<Deflater> deflaters;
+    private final BoundedPool<byte[]> buffers;
+
+    PooledGzipCompression() {
+        this(Deflater.DEFAULT_COMPRESSION, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    PooledGzipCompression(int level, int poolCapacity) {
+        deflaters = new BoundedPool<>(poolCapacity, () -> new Deflater(level, true),
+                Deflater::reset, Deflater::end);
+        buffers = new BoundedPool<>(poolCapacity, () -> new byte[BUFFER_SIZE], buffer -> {
+        }, buffer -> {
+        });
+    }
+
+    @Override
+    public OutputStream compress(OutputStream data) throws IOException {
+        data.write(ParallelGzipCompression.HEADER);
+        return new PooledGzipOutputStream(data);
+    }
+
+    long deflatersCreated() {
+        return deflaters.createdCount();
+    }
+
+    /**
+     * Ends the idle deflaters.
+     */
+    void clear() {
+        deflaters.clear();
+        buffers.clear();
+    }
+
+    private class PooledGzipOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final BoundedPool<Deflater>.Lease deflater = deflaters.acquire();
+        private final BoundedPool<byte[]>.Lease buffer = buffers.acquire();
+        private final CRC32 crc = new CRC32();
+        private long length;
+        private boolean closed;
+
+        PooledGzipOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+            crc.update(bytes, offset, length);
+            this.length += length;
+            Deflater deflater = this.deflater.get();
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                deflate(deflater);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                Deflater deflater = this.deflater.get();
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(deflater);
+                }
+                ParallelGzipCompression.writeTrailer(out, crc.getValue(), length);
+            } finally {
+                deflater.close();
+                buffer.close();
+                out.close();
+            }
+        }
+
+        private void deflate(Deflater deflater) throws IOException {
+            byte[] bytes = buffer.get();
+            out.write(bytes, 0, deflater.deflate(bytes));
+        }
+    }
+}
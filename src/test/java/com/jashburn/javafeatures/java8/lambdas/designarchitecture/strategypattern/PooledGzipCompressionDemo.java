@@ -0,0 +1,153 @@
+package com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern;
+
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.compress;
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.gunzip;
+import static com.jashburn.javafeatures.java8.lambdas.designarchitecture.strategypattern.ParallelGzipCompressionDemo.sampleData;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PooledGzipCompressionDemo {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readableByGZIPInputStream() throws IOException {
+        CompressionStrategy strategy = new PooledGzipCompression();
+        for (int length : new int[] {0, 1, 1000, PooledGzipCompression.BUFFER_SIZE + 1,
+                1_000_000}) {
+            byte[] data = sampleData(length);
+            assertArrayEquals(data, gunzip(compress(strategy, data)), length + " bytes");
+        }
+    }
+
+    @Test
+    void compressorWithPooledStrategy() throws IOException {
+        Path inFile = Files.write(directory.resolve("in"), sampleData(100_000));
+        Path outFile = directory.resolve("in.gz");
+
+        new Client().compressWithPooledGZIP(inFile, outFile.toFile());
+
+        assertArrayEquals(Files.readAllBytes(inFile), gunzip(Files.readAllBytes(outFile)));
+    }
+
+    /**
+     * One compression after another reuses one deflater.
+     */
+    @Test
+    void reusesDeflater() throws IOException {
+        PooledGzipCompression strategy = new PooledGzipCompression(Deflater.BEST_SPEED, 2);
+        byte[] data = sampleData(10_000);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(data, gunzip(compress(strategy, data)));
+        }
+        assertEquals(1, strategy.deflatersCreated());
+        strategy.clear();
+    }
+
+    /**
+     * Objects beyond the capacity are disposed of as they are released; the rest are reset and
+     * reused.
+     */
+    @Test
+    void boundedPool() {
+        AtomicInteger resets = new AtomicInteger();
+        List<Object> disposed = new ArrayList<>();
+        BoundedPool<Object> pool = new BoundedPool<>(2, Object::new,
+                object -> resets.incrementAndGet(), disposed::add);
+
+        List<BoundedPool<Object>.Lease> leases = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            leases.add(pool.acquire());
+        }
+        Object first = leases.get(0).get();
+        leases.forEach(BoundedPool.Lease::close);
+        leases.get(0).close(); // Only the first close releases
+
+        assertEquals(5, pool.createdCount());
+        assertEquals(5, resets.get());
+        assertEquals(2, pool.idleCount());
+        assertEquals(3, disposed.size());
+        assertThrows(IllegalStateException.class, () -> leases.get(0).get());
+
+        assertSame(first, pool.acquire().get());
+        pool.clear(); // Disposes of the other idle one, not the one in use
+        assertEquals(0, pool.idleCount());
+        assertEquals(4, disposed.size());
+    }
+
+    /**
+     * With leases capped, acquiring waits while the cap is reached, until a lease is closed.
+     */
+    @Test
+    void cappedLeases() throws Exception {
+        BoundedPool<Object> pool = new BoundedPool<>(1, 1, Object::new, object -> {
+        }, object -> {
+        });
+        BoundedPool<Object>.Lease held = pool.acquire();
+
+        CompletableFuture<Object> waiting = CompletableFuture.supplyAsync(() -> {
+            try (BoundedPool<Object>.Lease lease = pool.acquire()) {
+                return lease.get();
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        Object object = held.get();
+        held.close();
+        assertSame(object, waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.createdCount());
+    }
+
+    /**
+     * Compares time and heap allocated per compression of 4 KB with {@code GZIPOutputStream}. The
+     * native memory of each {@code GZIPOutputStream}'s deflater is not counted, but is allocated
+     * and freed per call as well.
+     */
+    @Test
+    void allocationPerCompression() throws IOException {
+        byte[] data = sampleData(4096);
+        CompressionStrategy[] strategies = {GZIPOutputStream::new, new PooledGzipCompression()};
+        String[] names = {"GZIPOutputStream", "pooled"};
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(data.length);
+        int calls = 20_000;
+
+        for (int run = 0; run < 2; run++) {
+            for (int i = 0; i < strategies.length; i++) {
+                long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                for (int call = 0; call < calls; call++) {
+                    sink.reset();
+                    try (OutputStream out = strategies[i].compress(sink)) {
+                        out.write(data);
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+                System.out.printf("%s: %.1f us, %d bytes allocated per compression%n", names[i],
+                        nanos / 1e3 / calls, allocated / calls);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of calls in flight to a backend, adjusting the limit from the latencies it
+ * measures, in the style of TCP Vegas.
+ * <ul>
+ * <li>the lowest latency seen is taken as the latency of an idle backend; if a call takes longer
+ * than that, the difference is time spent queuing inside the backend, and
+ * {@code limit * (1 - minLatency / latency)} estimates how many calls are queued there</li>
+ * <li>if fewer than {@code alpha} calls are estimated to be queued, the backend has spare capacity
+ * and the limit goes up; if more than {@code beta}, the limit goes down; in between, it stays
+ * where it is, just past the backend's knee. Both thresholds and the step size grow with the
+ * logarithm of the limit, so large limits converge as quickly as small ones</li>
+ * <li>a failed call is taken as a sign of overload, and cuts the limit by 10%</li>
+ * <li>calls over the limit wait in a short queue, and are rejected straight away (with a
+ * {@link RejectedExecutionException}) once that is full, rather than piling up. A call that has
+ * waited {@code maxQueueWait} without being started fails with a {@link TimeoutException}</li>
+ * <li>when a call completes, as many queued calls are started as the (possibly raised) limit
+ * allows. They are started on an {@link Executor}, not on the completing thread, so that calls
+ * that complete synchronously do not start each other recursively</li>
+ * </ul>
+ */
+class AdaptiveConcurrencyLimiter {
+
+    // The lowest latency is forgotten after this many samples, in case the backend has got faster
+    // (or slower) since
+    private static final int MIN_LATENCY_RESET_SAMPLES = 1_000;
+    private static final double BACKOFF_RATIO = 0.9;
+    static final Duration DEFAULT_MAX_QUEUE_WAIT = Duration.ofSeconds(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueLength;
+    private final long maxQueueWaitNanos;
+    private final Executor executor;
+
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private int samples;
+    private final Queue<QueuedCall> queue = new ArrayDeque<>();
+
+    private final LongAdder rejections = new LongAdder();
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueueLength) {
+        this(initialLimit, minLimit, maxLimit, maxQueueLength, DEFAULT_MAX_QUEUE_WAIT,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor starts the queued calls
+     */
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueueLength,
+            Duration maxQueueWait, Executor executor) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(String.format("limits: initial=%d, min=%d, max=%d",
+                    initialLimit, minLimit, maxLimit));
+        }
+        if (maxQueueLength < 0) {
+            throw new IllegalArgumentException("maxQueueLength: " + maxQueueLength);
+        }
+        if (maxQueueWait.isNegative() || maxQueueWait.isZero()) {
+            throw new IllegalArgumentException("maxQueueWait: " + maxQueueWait);
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueueLength = maxQueueLength;
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        this.executor = executor;
+    }
+
+    /**
+     * @param call starts a call to the backend; only invoked once the call is within the limit
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        QueuedCall queued = new QueuedCall(() -> start(call, result), result);
+
+        synchronized (this) {
+            if (inFlight >= (int) limit) {
+                if (queue.size() >= maxQueueLength) {
+                    rejections.increment();
+                    return CompletableFuture.failedFuture(
+                            new RejectedExecutionException("concurrency limit reached"));
+                }
+                queue.add(queued);
+                CompletableFuture.delayedExecutor(maxQueueWaitNanos, TimeUnit.NANOSECONDS)
+                        .execute(() -> timeOut(queued));
+                return result;
+            }
+            inFlight++;
+        }
+        queued.start.run();
+        return result;
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the calls rejected, with the queue full or after waiting too long in it
+     */
+    long rejectionCount() {
+        return rejections.sum();
+    }
+
+    private <T> void start(Supplier<CompletableFuture<T>> call, CompletableFuture<T> result) {
+        long start = System.nanoTime();
+        int inFlightAtStart = inFlight();
+
+        CompletableFuture<T> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        response.whenComplete((value, error) -> {
+            List<QueuedCall> next =
+                    onComplete(System.nanoTime() - start, inFlightAtStart, error != null);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+            for (QueuedCall queued : next) {
+                executor.execute(queued.start);
+            }
+        });
+    }
+
+    /**
+     * Updates the limit, and takes the queued calls that now fit within it.
+     */
+    private synchronized List<QueuedCall> onComplete(long latencyNanos, int inFlightAtStart,
+            boolean failed) {
+        if (failed) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else {
+            updateLimit(latencyNanos, inFlightAtStart);
+        }
+        inFlight--;
+
+        List<QueuedCall> startable = new ArrayList<>();
+        while (inFlight < (int) limit && !queue.isEmpty()) {
+            startable.add(queue.poll());
+            inFlight++;
+        }
+        return startable;
+    }
+
+    /**
+     * Fails the call if it is still queued.
+     */
+    private void timeOut(QueuedCall queued) {
+        synchronized (this) {
+            if (!queue.remove(queued)) {
+                return;
+            }
+        }
+        rejections.increment();
+        queued.result.completeExceptionally(new TimeoutException(
+                "queued for longer than " + Duration.ofNanos(maxQueueWaitNanos)));
+    }
+
+    private void updateLimit(long latencyNanos, int inFlightAtStart) {
+        if (++samples >= MIN_LATENCY_RESET_SAMPLES) {
+            samples = 0;
+            minLatencyNanos = latencyNanos;
+        }
+        minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+
+        double queued = limit * (1 - (double) minLatencyNanos / latencyNanos);
+        double log = Math.max(1, Math.log10(limit));
+        double alpha = 3 * log;
+        double beta = 6 * log;
+
+        if (queued > beta) {
+            limit = Math.max(minLimit, limit - log);
+        } else if (queued < alpha && inFlightAtStart * 2 >= limit) {
+            // Only probe upwards if the current limit is actually being used
+            limit = Math.min(maxLimit, limit + log);
+        }
+    }
+
+    private static class QueuedCall {
+
+        final Runnable start;
+        final CompletableFuture<?> result;
+
+        QueuedCall(Runnable start, CompletableFuture<?> result) {
+            this.start = start;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency.SimulatedBackend.LatencyDistribution;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimiterDemo {
+
+    @Test
+    void excessCallsQueuedThenRejected() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 1);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        CompletableFuture<String> first = limiter.submit(() -> pending);
+        CompletableFuture<String> second = limiter.submit(() -> pending);
+        CompletableFuture<String> queued =
+                limiter.submit(() -> CompletableFuture.completedFuture("queued"));
+        CompletableFuture<String> rejected = limiter.submit(() -> pending);
+
+        assertAll(() -> assertEquals(2, limiter.inFlight()),
+                () -> assertTrue(rejected.isCompletedExceptionally()),
+                () -> assertEquals(1, limiter.rejectionCount()));
+        CompletionException rejection = assertThrows(CompletionException.class, rejected::join);
+        assertTrue(rejection.getCause() instanceof RejectedExecutionException);
+
+        pending.complete("done");
+        assertAll(() -> assertEquals("done", first.join()),
+                () -> assertEquals("done", second.join()),
+                () -> assertEquals("queued", queued.join()),
+                () -> assertEquals(0, limiter.inFlight()));
+    }
+
+    /**
+     * A completion that raises the limit starts as many queued calls as now fit, handing them to
+     * the executor rather than running them on the completing thread.
+     */
+    @Test
+    void risingLimitStartsSeveralQueuedCalls() {
+        List<Runnable> started = new ArrayList<>();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 5,
+                Duration.ofSeconds(10), started::add);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        limiter.submit(() -> pending);
+        limiter.submit(() -> new CompletableFuture<String>());
+        for (int i = 0; i < 5; i++) {
+            limiter.submit(() -> CompletableFuture.completedFuture("queued"));
+        }
+
+        pending.complete("done"); // An idle backend's latency: the limit goes up to 3
+
+        assertAll(() -> assertEquals(3, limiter.limit()),
+                () -> assertEquals(2, started.size()),
+                () -> assertEquals(3, limiter.inFlight()));
+    }
+
+    /**
+     * Many queued calls that complete synchronously do not start each other recursively.
+     */
+    @Test
+    void synchronousCompletionsDoNotRecurse() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 10_000);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        limiter.submit(() -> pending);
+        List<CompletableFuture<String>> queued = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            queued.add(limiter.submit(() -> CompletableFuture.completedFuture("queued")));
+        }
+
+        pending.complete("done");
+
+        CompletableFuture.allOf(queued.toArray(CompletableFuture[]::new)).join();
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void queuedCallsTimeOut() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1,
+                Duration.ofMillis(50), Runnable::run);
+        limiter.submit(() -> new CompletableFuture<String>());
+        CompletableFuture<String> queued =
+                limiter.submit(() -> CompletableFuture.completedFuture("queued"));
+
+        CompletionException timeout = assertThrows(CompletionException.class, queued::join);
+        assertAll(() -> assertTrue(timeout.getCause() instanceof TimeoutException),
+                () -> assertEquals(1, limiter.rejectionCount()),
+                () -> assertEquals(1, limiter.inFlight()),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new AdaptiveConcurrencyLimiter(1, 1, 1, -1)));
+    }
+
+    @Test
+    void failuresReduceLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 100, 0);
+        for (int i = 0; i < 10; i++) {
+            limiter.submit(() -> CompletableFuture.failedFuture(new IllegalStateException()));
+        }
+        assertEquals(6, limiter.limit()); // 20 * 0.9^10
+    }
+
+    /**
+     * A backend that serves 4 calls at a time, each taking 10ms, i.e., 400 calls a second, sent 600
+     * calls a second. Without a limit, every call queues in the backend and latency grows for as
+     * long as the overload lasts. With a limit, the excess is rejected, and the calls that are let
+     * through stay fast.
+     */
+    @Test
+    void overloadWithAndWithoutLimit() {
+        OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(600, Duration.ofSeconds(1));
+
+        OpenLoopLoadGenerator.Result unlimited;
+        try (SimulatedBackend backend = overloadedBackend()) {
+            unlimited = generator.run(() -> backend.call(() -> List.of()));
+        }
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 200, 0);
+        LatencyHistogram accepted = new LatencyHistogram();
+        OpenLoopLoadGenerator.Result limited;
+        try (SimulatedBackend backend = overloadedBackend()) {
+            limited = generator.run(() -> {
+                long start = System.nanoTime();
+                return limiter.submit(() -> backend.call(() -> List.of()))
+                        .thenRun(() -> accepted.recordNanos(System.nanoTime() - start));
+            });
+        }
+
+        System.out.println("Unlimited: " + unlimited);
+        System.out.println("Limited: " + limited + ", limit=" + limiter.limit());
+        System.out.println("  accepted latency: " + accepted.snapshot());
+
+        long acceptedCount = accepted.snapshot().count();
+        assertAll(() -> assertTrue(unlimited.latency().valueAtPercentile(99) > 250_000),
+                () -> assertTrue(accepted.snapshot().valueAtPercentile(99) < 100_000),
+                () -> assertTrue(limited.errorCount() > 0),
+                () -> assertTrue(acceptedCount > 300, () -> acceptedCount + " accepted"),
+                () -> assertTrue(limiter.limit() < 20, () -> "limit=" + limiter.limit()));
+    }
+
+    private static SimulatedBackend overloadedBackend() {
+        return new SimulatedBackend(LatencyDistribution.fixed(Duration.ofMillis(10)), 0, 4, 1);
+    }
+}
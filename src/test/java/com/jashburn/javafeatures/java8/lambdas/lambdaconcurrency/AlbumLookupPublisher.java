@@ -0,0 +1,173 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import com.jashburn.javafeatures.java8.lambdas.Album;
+
+/**
+ * Streams the albums for a sequence of album names to a {@link Flow.Subscriber}, instead of
+ * looking them all up and collecting them into memory.
+ * <ul>
+ * <li>a lookup is only started when the subscriber has requested an album that is not already
+ * being looked up, so a slow subscriber throttles the lookups</li>
+ * <li>at most {@code maxInFlight} lookups run at once, however much has been requested</li>
+ * <li>albums are delivered in the order of their names; a failed lookup ends the stream with
+ * {@code onError}</li>
+ * </ul>
+ * Memory use is therefore bounded by {@code maxInFlight}, not by the number of names.
+ */
+class AlbumLookupPublisher implements Flow.Publisher<Album> {
+
+    private final Iterable<String> albumNames;
+    private final Function<String, CompletableFuture<Album>> lookup;
+    private final int maxInFlight;
+
+    AlbumLookupPublisher(Iterable<String> albumNames,
+            Function<String, CompletableFuture<Album>> lookup, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight: " + maxInFlight);
+        }
+        this.albumNames = Objects.requireNonNull(albumNames);
+        this.lookup = Objects.requireNonNull(lookup);
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Each subscriber gets its own pass over the album names.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Album> subscriber) {
+        Objects.requireNonNull(subscriber);
+        LookupSubscription subscription =
+                new LookupSubscription(subscriber, albumNames.iterator());
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * All signals to the subscriber are made from {@link #drain()}, which only ever runs on one
+     * thread at a time: a thread that finds {@code wip} already non-zero just records that there
+     * is more work, and leaves it to the thread already draining.
+     */
+    private class LookupSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Album> subscriber;
+        private final Iterator<String> names;
+        // Lookups in name order; only accessed while draining
+        private final Queue<CompletableFuture<Album>> inFlight = new ArrayDeque<>();
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+
+        LookupSubscription(Flow.Subscriber<? super Album> subscriber, Iterator<String> names) {
+            this.subscriber = subscriber;
+            this.names = names;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                requested.getAndAccumulate(n, (current, added) -> {
+                    long sum = current + added;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                if (done) {
+                    return;
+                }
+                long demand = requested.get();
+                long emitted = 0;
+
+                while (!done) {
+                    if (cancelled) {
+                        finish();
+                        break;
+                    }
+                    if (invalidRequest != null) {
+                        finish();
+                        subscriber.onError(invalidRequest);
+                        break;
+                    }
+
+                    CompletableFuture<Album> head = inFlight.peek();
+                    if (head != null && head.isDone() && emitted != demand) {
+                        inFlight.poll();
+                        Album album;
+                        try {
+                            album = head.join();
+                        } catch (CompletionException | CancellationException e) {
+                            finish();
+                            subscriber.onError(e.getCause() != null ? e.getCause() : e);
+                            break;
+                        }
+                        subscriber.onNext(album);
+                        emitted++;
+                    } else if (inFlight.size() < maxInFlight
+                            && demand - emitted > inFlight.size() && names.hasNext()) {
+                        startLookup(names.next());
+                    } else if (inFlight.isEmpty() && !names.hasNext()) {
+                        finish();
+                        subscriber.onComplete();
+                    } else {
+                        break;
+                    }
+                }
+
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void startLookup(String albumName) {
+            CompletableFuture<Album> album;
+            try {
+                album = lookup.apply(albumName);
+            } catch (RuntimeException e) {
+                album = CompletableFuture.failedFuture(e);
+            }
+            inFlight.add(album);
+            // Runs straight away if already complete, which drain() absorbs as a missed signal
+            album.whenComplete((result, error) -> drain());
+        }
+
+        /**
+         * Outstanding lookups are dropped rather than cancelled, as their futures may be shared
+         * (e.g., by a cache).
+         */
+        private void finish() {
+            done = true;
+            inFlight.clear();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import com.jashburn.javafeatures.java8.lambdas.Album;
+import org.junit.jupiter.api.Test;
+
+class AlbumLookupPublisherDemo {
+
+    private final Map<String, CompletableFuture<Album>> lookups = new ConcurrentHashMap<>();
+
+    private CompletableFuture<Album> pendingLookup(String albumName) {
+        return lookups.computeIfAbsent(albumName, name -> new CompletableFuture<>());
+    }
+
+    private void completeLookup(String albumName) {
+        lookups.get(albumName).complete(new Album(albumName, List.of(), List.of()));
+    }
+
+    private static List<String> albumNames(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "album " + i).collect(Collectors.toList());
+    }
+
+    @Test
+    void lookupsFollowDemand() {
+        AlbumLookupPublisher publisher =
+                new AlbumLookupPublisher(albumNames(10), this::pendingLookup, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        assertEquals(0, lookups.size(), "nothing requested yet");
+
+        subscriber.subscription.request(2);
+        assertEquals(2, lookups.size());
+
+        subscriber.subscription.request(10);
+        assertEquals(4, lookups.size(), "bounded by maxInFlight");
+
+        // Albums are delivered in name order, so completing the second one delivers nothing
+        completeLookup("album 1");
+        assertEquals(List.of(), subscriber.albumNames());
+
+        completeLookup("album 0");
+        assertEquals(List.of("album 0", "album 1"), subscriber.albumNames());
+        assertEquals(6, lookups.size(), "two more lookups started");
+
+        albumNames(10).forEach(this::completeLookup);
+        assertAll(() -> assertEquals(albumNames(10), subscriber.albumNames()),
+                () -> assertTrue(subscriber.completed));
+    }
+
+    @Test
+    void failedLookupEndsStream() {
+        AlbumLookupPublisher publisher = new AlbumLookupPublisher(albumNames(3),
+                albumName -> "album 1".equals(albumName)
+                        ? CompletableFuture.failedFuture(new IllegalStateException(albumName))
+                        : CompletableFuture
+                                .completedFuture(new Album(albumName, List.of(), List.of())),
+                2);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertAll(() -> assertEquals(List.of("album 0"), subscriber.albumNames()),
+                () -> assertTrue(subscriber.error instanceof IllegalStateException),
+                () -> assertFalse(subscriber.completed));
+    }
+
+    @Test
+    void cancelStopsLookups() {
+        AlbumLookupPublisher publisher =
+                new AlbumLookupPublisher(albumNames(10), this::pendingLookup, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(5);
+
+        completeLookup("album 0");
+        assertAll(() -> assertEquals(1, lookups.size()),
+                () -> assertEquals(List.of(), subscriber.albumNames()));
+    }
+
+    @Test
+    void nonPositiveRequestIsAnError() {
+        AlbumLookupPublisher publisher =
+                new AlbumLookupPublisher(albumNames(10), this::pendingLookup, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    /**
+     * A slow subscriber exporting a large catalog, requesting one album at a time: the number of
+     * outstanding lookups never exceeds the subscriber's demand, let alone maxInFlight.
+     */
+    @Test
+    void slowSubscriberThrottlesLookups() throws InterruptedException {
+        AtomicInteger outstanding = new AtomicInteger();
+        AtomicInteger maxOutstanding = new AtomicInteger();
+        AlbumLookupPublisher publisher =
+                new AlbumLookupPublisher(albumNames(100_000), albumName -> {
+                    maxOutstanding.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+                    return CompletableFuture.supplyAsync(() -> {
+                        outstanding.decrementAndGet();
+                        return new Album(albumName, List.of(), List.of());
+                    });
+                }, 8);
+
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicInteger received = new AtomicInteger();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Album album) {
+                received.incrementAndGet();
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        assertTrue(completed.await(30, TimeUnit.SECONDS));
+        assertAll(() -> assertEquals(100_000, received.get()),
+                () -> assertEquals(1, maxOutstanding.get()));
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Album> {
+        private final List<Album> albums = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Album album) {
+            albums.add(album);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        List<String> albumNames() {
+            return albums.stream().map(Album::getName).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of {@link CompletableFuture}s, loaded asynchronously by a lookup function.
+ * <ul>
+ * <li>the future is cached as soon as the load starts, so concurrent requests for the same key
+ * share a single load; failed loads are removed so that the next request retries</li>
+ * <li>bounded by {@code maximumSize}: when full, the least recently used entry is the eviction
+ * candidate, but a new key only replaces it if it has been requested more often (TinyLFU
+ * admission), so that one-off scans do not flush out hot entries</li>
+ * <li>request frequencies are kept in a small count-min sketch that is halved periodically, so
+ * that keys that used to be popular age out</li>
+ * <li>entries expire a fixed time after they were written</li>
+ * <li>hits take no lock: the entries live in a {@link ConcurrentHashMap}, and a hit only records
+ * its key in a small read buffer. The buffer is drained into the recency order and the sketch
+ * under the policy lock, by whichever thread finds it half full and the lock free, and by every
+ * miss. When hits outpace the draining, the buffer drops them, which only makes the recency
+ * order and frequencies slightly less accurate</li>
+ * </ul>
+ */
+class AsyncLoadingCache<K, V> {
+
+    private final int maximumSize;
+    private final long expireAfterWriteNanos;
+    private final Function<? super K, ? extends CompletableFuture<V>> loader;
+    private final LongSupplier ticker;
+    private final FrequencySketch sketch;
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ReadBuffer<K> readBuffer = new ReadBuffer<>();
+
+    // Guarded by policyLock. Access-ordered, so the first entry is the least recently used
+    private final LinkedHashMap<K, Entry<V>> recency = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock policyLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    AsyncLoadingCache(int maximumSize, Duration expireAfterWrite,
+            Function<? super K, ? extends CompletableFuture<V>> loader) {
+        this(maximumSize, expireAfterWrite, loader, System::nanoTime);
+    }
+
+    AsyncLoadingCache(int maximumSize, Duration expireAfterWrite,
+            Function<? super K, ? extends CompletableFuture<V>> loader, LongSupplier ticker) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+        this.loader = Objects.requireNonNull(loader);
+        this.ticker = Objects.requireNonNull(ticker);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Returns the cached future for {@code key}, starting a load if there is none (or it has
+     * expired). The loader is called outside the policy lock.
+     */
+    CompletableFuture<V> get(K key) {
+        Objects.requireNonNull(key);
+        Entry<V> entry = entries.get(key);
+        if (entry != null && !isExpired(entry, ticker.getAsLong())) {
+            hits.increment();
+            if (readBuffer.offer(key) >= ReadBuffer.DRAIN_THRESHOLD && policyLock.tryLock()) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            return entry.future;
+        }
+
+        CompletableFuture<V> pending;
+        policyLock.lock();
+        try {
+            drainReadBuffer();
+            long now = ticker.getAsLong();
+            sketch.increment(key);
+
+            // Another miss may have loaded the key while this one waited for the lock
+            entry = recency.get(key);
+            if (entry != null && !isExpired(entry, now)) {
+                hits.increment();
+                return entry.future;
+            }
+
+            misses.increment();
+            if (entry != null) {
+                remove(key);
+            }
+            pending = new CompletableFuture<>();
+            admit(key, new Entry<>(pending, now), now);
+        } finally {
+            policyLock.unlock();
+        }
+
+        load(key, pending);
+        return pending;
+    }
+
+    void invalidate(K key) {
+        policyLock.lock();
+        try {
+            remove(key);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum());
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return now - entry.writeTime >= expireAfterWriteNanos;
+    }
+
+    /**
+     * Replays the buffered hits into the recency order and the sketch. Called with the policy
+     * lock held.
+     */
+    private void drainReadBuffer() {
+        readBuffer.drain(key -> {
+            sketch.increment(key);
+            recency.get(key); // Moves the key, if still cached, to the most recently used end
+        });
+    }
+
+    /**
+     * Called with the policy lock held.
+     */
+    private void admit(K key, Entry<V> candidate, long now) {
+        if (recency.size() >= maximumSize) {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = recency.entrySet().iterator();
+            Map.Entry<K, Entry<V>> victim = iterator.next();
+
+            if (!isExpired(victim.getValue(), now)
+                    && sketch.frequency(key) <= sketch.frequency(victim.getKey())) {
+                // Candidate is not worth keeping: it is loaded for this caller only
+                rejections.increment();
+                return;
+            }
+            iterator.remove();
+            entries.remove(victim.getKey());
+            evictions.increment();
+        }
+        recency.put(key, candidate);
+        entries.put(key, candidate);
+    }
+
+    /**
+     * Called with the policy lock held.
+     */
+    private void remove(K key) {
+        recency.remove(key);
+        entries.remove(key);
+    }
+
+    private void load(K key, CompletableFuture<V> pending) {
+        CompletableFuture<V> loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (RuntimeException e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+
+        loaded.whenComplete((value, error) -> {
+            if (error != null) {
+                // Remove before completing, so that callers reacting to the failure reload
+                removeIfSame(key, pending);
+                pending.completeExceptionally(error);
+            } else {
+                pending.complete(value);
+            }
+        });
+    }
+
+    private void removeIfSame(K key, CompletableFuture<V> future) {
+        policyLock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.future == future) {
+                remove(key);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final CompletableFuture<V> future;
+        private final long writeTime;
+
+        Entry(CompletableFuture<V> future, long writeTime) {
+            this.future = future;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * Bounded multi-producer, single-consumer ring of the keys of recent hits. Producers claim a
+     * slot by incrementing {@code writes}, and give up rather than wait when the ring is full; the
+     * consumer, holding the policy lock, empties it in order.
+     */
+    private static final class ReadBuffer<K> {
+        private static final int SIZE = 64;
+        private static final int MASK = SIZE - 1;
+        static final int DRAIN_THRESHOLD = SIZE / 2;
+
+        private final AtomicReferenceArray<K> slots = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        private volatile long reads;
+
+        /**
+         * @return the number of keys pending, or {@code SIZE} if the ring was full and the key
+         *         was dropped
+         */
+        int offer(K key) {
+            long read = reads;
+            long write = writes.get();
+            if (write - read >= SIZE) {
+                return SIZE;
+            }
+            if (!writes.compareAndSet(write, write + 1)) {
+                return SIZE; // Contended: dropping the hit is cheaper than retrying
+            }
+            slots.lazySet((int) (write & MASK), key);
+            return (int) (write + 1 - read);
+        }
+
+        void drain(Consumer<K> consumer) {
+            long read = reads;
+            long write = writes.get();
+            while (read < write) {
+                int index = (int) (read & MASK);
+                K key = slots.get(index);
+                if (key == null) {
+                    break; // Claimed, but not written yet: left for the next drain
+                }
+                slots.lazySet(index, null);
+                consumer.accept(key);
+                read++;
+            }
+            reads = read;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters: each key increments one counter in each of
+     * {@link #DEPTH} rows, and its estimated frequency is the smallest of those counters. Once
+     * {@code 10 * maximumSize} increments have been made, all counters are halved.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xb5ad4ece, 0x8b1e8d8b, 0x6c078965};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            // Wide enough that keys outside the cache rarely share all their counters
+            int width = Integer.highestOneBit(Math.max(maximumSize, 8) * 8 - 1) << 1;
+            this.table = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * Math.max(maximumSize, 8);
+        }
+
+        void increment(Object key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int index = indexOf(hash, row);
+                if (table[row][index] < MAX_COUNT) {
+                    table[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, table[row][indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void reset() {
+            for (byte[] counters : table) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+
+    static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long rejectionCount;
+
+        Stats(long hitCount, long missCount, long evictionCount, long rejectionCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.rejectionCount = rejectionCount;
+        }
+
+        long hitCount() {
+            return hitCount;
+        }
+
+        long missCount() {
+            return missCount;
+        }
+
+        long evictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Number of loaded keys that were not admitted to a full cache.
+         */
+        long rejectionCount() {
+            return rejectionCount;
+        }
+
+        double hitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats [hits=" + hitCount + ", misses=" + missCount + ", evictions="
+                    + evictionCount + ", rejections=" + rejectionCount + "]";
+        }
+    }
+}
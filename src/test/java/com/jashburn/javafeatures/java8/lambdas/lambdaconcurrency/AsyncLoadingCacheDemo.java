@@ -0,0 +1,184 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.jashburn.javafeatures.java8.lambdas.Album;
+import org.junit.jupiter.api.Test;
+
+class AsyncLoadingCacheDemo {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicLong time = new AtomicLong();
+
+    private CompletableFuture<Album> loadAlbum(String albumName) {
+        loads.incrementAndGet();
+        return CompletableFuture.completedFuture(new Album(albumName, List.of(), List.of()));
+    }
+
+    @Test
+    void concurrentRequestsShareOneLoad() {
+        CompletableFuture<Album> pending = new CompletableFuture<>();
+        AsyncLoadingCache<String, Album> cache = new AsyncLoadingCache<>(10,
+                Duration.ofMinutes(1), albumName -> {
+                    loads.incrementAndGet();
+                    return pending;
+                });
+
+        CompletableFuture<Album> first = cache.get("The AA");
+        CompletableFuture<Album> second = cache.get("The AA");
+        pending.complete(new Album("The AA", List.of(), List.of()));
+
+        assertAll(() -> assertEquals(1, loads.get()),
+                () -> assertSame(first.join(), second.join()),
+                () -> assertEquals(1, cache.stats().hitCount()),
+                () -> assertEquals(1, cache.stats().missCount()));
+    }
+
+    @Test
+    void expireAfterWrite() {
+        AsyncLoadingCache<String, Album> cache =
+                new AsyncLoadingCache<>(10, Duration.ofSeconds(5), this::loadAlbum, time::get);
+
+        cache.get("The AA");
+        time.addAndGet(Duration.ofSeconds(4).toNanos());
+        cache.get("The AA");
+        assertEquals(1, loads.get());
+
+        time.addAndGet(Duration.ofSeconds(1).toNanos());
+        cache.get("The AA");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        AsyncLoadingCache<String, Album> cache =
+                new AsyncLoadingCache<>(10, Duration.ofMinutes(1), albumName -> {
+                    if (loads.incrementAndGet() == 1) {
+                        return CompletableFuture.failedFuture(new IllegalStateException());
+                    }
+                    return CompletableFuture.completedFuture(
+                            new Album(albumName, List.of(), List.of()));
+                });
+
+        assertThrows(CompletionException.class, () -> cache.get("The AA").join());
+        assertEquals("The AA", cache.get("The AA").join().getName());
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * A scan of albums that are each requested once should not displace albums that are requested
+     * repeatedly, i.e., only the scanned albums are loaded.
+     */
+    @Test
+    void scanDoesNotEvictHotEntries() {
+        AsyncLoadingCache<String, Album> cache =
+                new AsyncLoadingCache<>(10, Duration.ofMinutes(1), this::loadAlbum);
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) {
+                cache.get("hot " + i);
+            }
+        }
+
+        // Each scanned album is requested once, in between requests for the hot albums
+        int loadsBefore = loads.get();
+        for (int i = 0; i < 1_000; i++) {
+            cache.get("scan " + i);
+            cache.get("hot " + i % 10);
+        }
+
+        assertAll(() -> assertEquals(loadsBefore + 1_000, loads.get()),
+                () -> assertEquals(10, cache.size()),
+                () -> assertTrue(cache.stats().rejectionCount() > 0));
+    }
+
+    /**
+     * Lookups following a Zipf distribution over 10,000 albums, with a cache that holds 5% of
+     * them. Keeping the 500 most popular albums would hit about 69% of the time, and plain LRU
+     * does markedly worse, as most of what it caches is requested once before it is evicted. The
+     * admission policy should come within 5 points of the former and beat the latter by 5.
+     */
+    @Test
+    void zipfianHitRate() {
+        int albums = 10_000;
+        int cacheSize = albums / 20;
+        double[] cumulative = new double[albums];
+        double total = 0;
+        for (int rank = 0; rank < albums; rank++) {
+            total += 1.0 / (rank + 1);
+            cumulative[rank] = total;
+        }
+
+        AsyncLoadingCache<String, Album> cache =
+                new AsyncLoadingCache<>(cacheSize, Duration.ofMinutes(1), this::loadAlbum);
+        Map<Integer, Boolean> lru = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        int lruHits = 0;
+        Random random = new Random(42);
+        int requests = 200_000;
+        for (int i = 0; i < requests; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            int album = index < 0 ? -index - 1 : index;
+            cache.get("album " + album);
+            if (lru.put(album, Boolean.TRUE) != null) {
+                lruHits++;
+            }
+        }
+
+        AsyncLoadingCache.Stats stats = cache.stats();
+        double lruHitRate = (double) lruHits / requests;
+        double optimalHitRate = cumulative[cacheSize - 1] / total;
+        System.out.printf("Zipfian %s, hit rate: %.3f (LRU: %.3f, optimal: %.3f)%n", stats,
+                stats.hitRate(), lruHitRate, optimalHitRate);
+        assertAll(() -> assertTrue(stats.hitRate() > optimalHitRate - 0.05, stats::toString),
+                () -> assertTrue(stats.hitRate() > lruHitRate + 0.05, stats::toString));
+    }
+
+    /**
+     * Threads hitting the same albums concurrently: every request is counted once, as a hit or a
+     * miss, and each album is loaded once.
+     */
+    @Test
+    void concurrentHits() throws InterruptedException {
+        AsyncLoadingCache<String, Album> cache =
+                new AsyncLoadingCache<>(100, Duration.ofMinutes(1), this::loadAlbum);
+        int threads = 4;
+        int requestsPerThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < requestsPerThread; i++) {
+                    assertEquals("album " + i % 50, cache.get("album " + i % 50).join().getName());
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        AsyncLoadingCache.Stats stats = cache.stats();
+        assertAll(() -> assertEquals(threads * requestsPerThread,
+                stats.hitCount() + stats.missCount()),
+                () -> assertEquals(50, loads.get()),
+                () -> assertEquals(50, cache.size()));
+    }
+}
@@ -1,11 +1,19 @@
 package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
 
+import static com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency.LookupStageMetrics.Stage.COMBINE;
+import static com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency.LookupStageMetrics.Stage.LOGIN;
+import static com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency.LookupStageMetrics.Stage.LOOKUP_ARTISTS;
+import static com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency.LookupStageMetrics.Stage.LOOKUP_TRACKS;
+import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
 import com.jashburn.javafeatures.java8.lambdas.Album;
 import com.jashburn.javafeatures.java8.lambdas.Artist;
@@ -27,27 +35,125 @@ class CompletableFuturesDemo {
     private static final int LOOKUP_ARTIST_TIME_MS = 75;
     private static final int LOOKUP_TRACKS_TIME_MS = 100;
 
+    private static final int ALBUM_CACHE_SIZE = 1_000;
+    private static final Duration ALBUM_CACHE_EXPIRY = Duration.ofMinutes(5);
+
+    private static final int MAX_LOOKUPS_IN_FLIGHT = 16;
+
+    private static final int INITIAL_LOOKUP_LIMIT = 20;
+    private static final int MAX_LOOKUP_LIMIT = 200;
+    private static final int MAX_LOOKUP_QUEUE_LENGTH = 100;
+
+    // Lookups beyond what the backends can handle are queued briefly, then rejected
+    private final AdaptiveConcurrencyLimiter artistLookupLimiter = new AdaptiveConcurrencyLimiter(
+            INITIAL_LOOKUP_LIMIT, 1, MAX_LOOKUP_LIMIT, MAX_LOOKUP_QUEUE_LENGTH);
+    private final AdaptiveConcurrencyLimiter trackLookupLimiter = new AdaptiveConcurrencyLimiter(
+            INITIAL_LOOKUP_LIMIT, 1, MAX_LOOKUP_LIMIT, MAX_LOOKUP_QUEUE_LENGTH);
+
+    // Each stage of lookupByNameAsync is timed into these histograms
+    private final LookupStageMetrics metrics = new LookupStageMetrics();
+
+    // The remote calls made by lookupByNameAsync; replaced to run the pipeline against other
+    // backends, such as a SimulatedBackend under load
+    private RemoteServices services = new DelayedServices();
+
+    private final AsyncLoadingCache<String, Album> albumCache =
+            new AsyncLoadingCache<>(ALBUM_CACHE_SIZE, ALBUM_CACHE_EXPIRY, this::lookupByNameAsync);
+
+    /**
+     * Login, artist, and track services, as called by {@link #lookupByNameAsync(String)}.
+     */
+    interface RemoteServices {
+
+        CompletableFuture<Credentials> login(String service);
+
+        CompletableFuture<List<Artist>> lookupArtists(String albumName, Credentials login);
+
+        CompletableFuture<List<Track>> lookupTracks(String albumName, Credentials login);
+    }
+
+    /**
+     * The lookup pipeline of this demo, calling {@code services} instead of the services below.
+     */
+    static CompletableFuturesDemo withServices(RemoteServices services) {
+        CompletableFuturesDemo demo = new CompletableFuturesDemo();
+        demo.services = services;
+        return demo;
+    }
+
     public Album lookupByName(String albumName) {
+        // join returns the result value when complete, or throws an (unchecked) exception if
+        // completed exceptionally.
+        // Like with the Streams API, we have not been actually doing things; we have been
+        // building up a recipe that says how to do things until one of the final methods is called.
+        return lookupByNameAsync(albumName).join();
+    }
+
+    /**
+     * Hot albums are served from the cache, while the first request for an album (or one that has
+     * expired) goes through {@link #lookupByNameAsync(String)}.
+     */
+    public Album lookupByNameCached(String albumName) {
+        return lookupByNameCachedAsync(albumName).join();
+    }
+
+    /**
+     * For bulk exports: albums are looked up as the subscriber requests them, rather than all
+     * being collected into memory.
+     */
+    public Flow.Publisher<Album> lookupAllByName(Iterable<String> albumNames) {
+        return new AlbumLookupPublisher(albumNames, this::lookupByNameCachedAsync,
+                MAX_LOOKUPS_IN_FLIGHT);
+    }
+
+    CompletableFuture<Album> lookupByNameCachedAsync(String albumName) {
+        return albumCache.get(albumName);
+    }
+
+    CompletableFuture<Album> lookupByNameAsync(String albumName) {
         // Use the thenCompose method to transform our Credentials into a CompletableFuture that
         // contains the artists
         CompletableFuture<List<Artist>> artistLookup =
-                loginTo("artist").thenCompose(artistLogin -> lookupArtists(albumName, artistLogin));
+                metrics.timeAsync(LOGIN, () -> services.login("artist")).thenCompose(
+                        artistLogin -> metrics.timeAsync(LOOKUP_ARTISTS,
+                                () -> artistLookupLimiter.submit(
+                                        () -> services.lookupArtists(albumName, artistLogin))));
 
         // (b) Generate a CompletableFuture of tracks
         CompletableFuture<List<Track>> tracksLookup =
-                loginTo("track").thenCompose(trackLogin -> lookupTracks(albumName, trackLogin));
+                metrics.timeAsync(LOGIN, () -> services.login("track")).thenCompose(
+                        trackLogin -> metrics.timeAsync(LOOKUP_TRACKS,
+                                () -> trackLookupLimiter.submit(
+                                        () -> services.lookupTracks(albumName, trackLogin))));
 
         // thenCombine takes the result from a CompletableFuture and combines it with another
         // CompletableFuture
         // - the combining operation is provided as a lambda expression
         // - take our tracks and artists and build up an Album object
-        return tracksLookup.thenCombine(artistLookup,
-                (tracks, artists) -> new Album(albumName, tracks, artists)).join();
+        return tracksLookup.thenCombine(artistLookup, (tracks, artists) -> metrics.time(COMBINE,
+                () -> new Album(albumName, tracks, artists)));
+    }
 
-        // join returns the result value when complete, or throws an (unchecked) exception if
-        // completed exceptionally.
-        // Like with the Streams API, we have not been actually doing things; we have been
-        // building up a recipe that says how to do things until one of the final methods is called.
+    /**
+     * Services that sleep for a fixed time, on the common pool, before responding.
+     */
+    private class DelayedServices implements RemoteServices {
+
+        @Override
+        public CompletableFuture<Credentials> login(String service) {
+            return loginTo(service);
+        }
+
+        @Override
+        public CompletableFuture<List<Artist>> lookupArtists(String albumName,
+                Credentials login) {
+            return CompletableFuturesDemo.this.lookupArtists(albumName, login);
+        }
+
+        @Override
+        public CompletableFuture<List<Track>> lookupTracks(String albumName, Credentials login) {
+            return CompletableFuturesDemo.this.lookupTracks(albumName, login);
+        }
     }
 
     private CompletableFuture<Credentials> loginTo(String service) {
@@ -96,7 +202,7 @@ class CompletableFuturesDemo {
         }
     }
 
-    private class Credentials {
+    static class Credentials {
         private String token;
 
         Credentials(String token) {
@@ -188,4 +294,31 @@ class CompletableFuturesDemo {
     // 110: [lookupArtists] Looked up for The AA
     // 160: [lookupTracks] Looked up up for The AA
     // 164: End
+
+    @Test
+    void testLookupByNameCached() {
+        printStart();
+        Album album = lookupByNameCached("The AA");
+
+        // Second lookup is a cache hit, so should not wait for login and lookup again
+        Album cachedAlbum = assertTimeout(Duration.ofMillis(LOGIN_ARTIST_TIME_MS),
+                () -> lookupByNameCached("The AA"));
+        assertSame(album, cachedAlbum);
+        assertEquals(1, albumCache.stats().hitCount());
+        assertEquals(1, albumCache.stats().missCount());
+        printMessage("End");
+    }
+
+    @Test
+    void testLookupStageMetrics() {
+        lookupByName("The AA");
+        System.out.print(metrics.report());
+
+        assertAll(() -> assertEquals(2, metrics.snapshot(LOGIN).count()),
+                () -> assertEquals(1, metrics.snapshot(LOOKUP_ARTISTS).count()),
+                () -> assertEquals(1, metrics.snapshot(LOOKUP_TRACKS).count()),
+                () -> assertEquals(1, metrics.snapshot(COMBINE).count()),
+                () -> assertTrue(metrics.snapshot(LOOKUP_TRACKS).max() >= TimeUnit.MILLISECONDS
+                        .toMicros(LOOKUP_TRACKS_TIME_MS)));
+    }
 }
@@ -0,0 +1,136 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of latencies in microseconds, safe to record into from many threads
+ * without locking.
+ * <p>
+ * Buckets are log-linear: values below {@code 2^SUB_BUCKET_BITS} microseconds get a bucket each,
+ * and above that every power of two is split into {@code 2^(SUB_BUCKET_BITS - 1)} equal buckets.
+ * A recorded value is therefore off by at most 1/64 (~1.6%) of itself, however large it is, and
+ * recording is one array index calculation and one atomic increment.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /** Larger values (over an hour) are recorded as this. */
+    static final long MAX_TRACKABLE_MICROS = (1L << 32) - 1;
+
+    private static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    void recordMicros(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_TRACKABLE_MICROS);
+        counts.incrementAndGet(bucketIndex(value));
+    }
+
+    /**
+     * Copies the current counts. Recording can carry on while this happens, so the copy may
+     * include some of the values recorded concurrently with it.
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        int mantissa = (int) (value >>> shift); // in [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+        return (shift + 1) * SUB_BUCKET_HALF_COUNT + mantissa - SUB_BUCKET_HALF_COUNT;
+    }
+
+    /**
+     * Highest value that is recorded in the bucket at {@code index}.
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long mantissa = index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            this.totalCount = total;
+        }
+
+        long count() {
+            return totalCount;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the value (in microseconds) that {@code percentile}% of recorded values are at
+         *         or below, to within the histogram's precision; 0 if nothing was recorded
+         */
+        long valueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(counts.length - 1);
+        }
+
+        long max() {
+            return valueAtPercentile(100);
+        }
+
+        double mean() {
+            if (totalCount == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                sum += (double) counts[i] * bucketUpperBound(i);
+            }
+            return sum / totalCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%.1fus, p50=%dus, p90=%dus, p99=%dus, "
+                    + "p99.9=%dus, max=%dus", count(), mean(), valueAtPercentile(50),
+                    valueAtPercentile(90), valueAtPercentile(99), valueAtPercentile(99.9), max());
+        }
+    }
+}
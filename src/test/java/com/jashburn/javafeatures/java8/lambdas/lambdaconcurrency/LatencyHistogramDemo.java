@@ -0,0 +1,93 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramDemo {
+
+    @Test
+    void percentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 100_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        double precision = 1.0 / 64;
+        assertAll(() -> assertEquals(100_000, snapshot.count()),
+                () -> assertEquals(50_000, snapshot.valueAtPercentile(50), 50_000 * precision),
+                () -> assertEquals(99_000, snapshot.valueAtPercentile(99), 99_000 * precision),
+                () -> assertEquals(99_900, snapshot.valueAtPercentile(99.9), 99_900 * precision),
+                () -> assertEquals(100_000, snapshot.max(), 100_000 * precision),
+                () -> assertEquals(50_000, snapshot.mean(), 50_000 * precision));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(0);
+        histogram.recordMicros(7);
+        histogram.recordMicros(127);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertAll(() -> assertEquals(0, snapshot.valueAtPercentile(10)),
+                () -> assertEquals(7, snapshot.valueAtPercentile(50)),
+                () -> assertEquals(127, snapshot.max()));
+    }
+
+    @Test
+    void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(-5);
+        histogram.recordMicros(Long.MAX_VALUE);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertAll(() -> assertEquals(2, snapshot.count()),
+                () -> assertEquals(0, snapshot.valueAtPercentile(50)),
+                () -> assertEquals(LatencyHistogram.MAX_TRACKABLE_MICROS, snapshot.max()));
+    }
+
+    @Test
+    void concurrentRecording() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        CompletableFuture<?>[] recorders = IntStream.range(0, 8)
+                .mapToObj(thread -> CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        histogram.recordNanos(i * 1_000L);
+                    }
+                })).toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(recorders).join();
+
+        assertEquals(800_000, histogram.snapshot().count());
+    }
+
+    /**
+     * Average cost of a recording, excluding the nanoTime calls needed to time something (which
+     * vary a lot between platforms).
+     */
+    @Test
+    void recordingCost() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int recordings = 10_000_000;
+        for (int warmUp = 0; warmUp < 3; warmUp++) {
+            recordLatencies(histogram, recordings);
+        }
+
+        long start = System.nanoTime();
+        recordLatencies(histogram, recordings);
+        double nanosPerRecording = (double) (System.nanoTime() - start) / recordings;
+
+        System.out.println("LatencyHistogram: " + nanosPerRecording + " ns per recording");
+        assertTrue(nanosPerRecording < 100, () -> nanosPerRecording + " ns");
+    }
+
+    private void recordLatencies(LatencyHistogram histogram, int recordings) {
+        for (int i = 0; i < recordings; i++) {
+            histogram.recordNanos((i & 0xFFFF) * 1_000L);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import com.jashburn.javafeatures.java8.lambdas.Album;
+import com.jashburn.javafeatures.java8.lambdas.Artist;
+import com.jashburn.javafeatures.java8.lambdas.Track;
+import com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency.CompletableFuturesDemo.Credentials;
+import com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency.SimulatedBackend.LatencyDistribution;
+import org.junit.jupiter.api.Test;
+
+class LoadGeneratorDemo {
+
+    @Test
+    void logNormalLatencyDistribution() {
+        LatencyDistribution latency = LatencyDistribution.logNormal(Duration.ofMillis(10), 0.5);
+        SplittableRandom random = new SplittableRandom(1);
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.recordMicros(latency.sampleMicros(random));
+        }
+
+        // 99th percentile of a log-normal distribution is median * e^(2.326 * sigma)
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertAll(() -> assertEquals(10_000, snapshot.valueAtPercentile(50), 300),
+                () -> assertEquals(10_000 * Math.exp(2.326 * 0.5),
+                        snapshot.valueAtPercentile(99), 1_500));
+    }
+
+    @Test
+    void errorRate() {
+        try (SimulatedBackend backend = new SimulatedBackend(
+                LatencyDistribution.fixed(Duration.ZERO), 0.1, 10, 1)) {
+            CompletableFuture<?>[] calls = IntStream.range(0, 10_000)
+                    .mapToObj(i -> backend.call(() -> i)).toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(calls).handle((result, error) -> null).join();
+            long failures = Stream.of(calls).filter(CompletableFuture::isCompletedExceptionally)
+                    .count();
+
+            assertEquals(1_000, failures, 100);
+        }
+    }
+
+    @Test
+    void concurrencyLimitQueuesExcessCalls() {
+        try (SimulatedBackend backend = new SimulatedBackend(
+                LatencyDistribution.fixed(Duration.ofMillis(20)), 0, 2, 1)) {
+            long start = System.nanoTime();
+            CompletableFuture<?>[] calls = IntStream.range(0, 10)
+                    .mapToObj(i -> backend.call(() -> i)).toArray(CompletableFuture[]::new);
+            assertEquals(8, backend.queueLength());
+
+            CompletableFuture.allOf(calls).join();
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMillis >= 100, () -> elapsedMillis + "ms");
+        }
+    }
+
+    /**
+     * Remote services of {@link CompletableFuturesDemo}, each call going to a simulated backend.
+     */
+    private static class SimulatedServices
+            implements CompletableFuturesDemo.RemoteServices, AutoCloseable {
+        private final SimulatedBackend loginBackend;
+        private final SimulatedBackend artistBackend;
+        private final SimulatedBackend trackBackend;
+
+        SimulatedServices(SimulatedBackend loginBackend, SimulatedBackend artistBackend,
+                SimulatedBackend trackBackend) {
+            this.loginBackend = loginBackend;
+            this.artistBackend = artistBackend;
+            this.trackBackend = trackBackend;
+        }
+
+        @Override
+        public CompletableFuture<Credentials> login(String service) {
+            return loginBackend.call(() -> new Credentials("Token: " + service));
+        }
+
+        @Override
+        public CompletableFuture<List<Artist>> lookupArtists(String albumName,
+                Credentials login) {
+            return artistBackend.call(() -> List.of(new Artist("aa", "UK")));
+        }
+
+        @Override
+        public CompletableFuture<List<Track>> lookupTracks(String albumName, Credentials login) {
+            return trackBackend.call(() -> List.of(new Track("track 1", 100)));
+        }
+
+        @Override
+        public void close() {
+            loginBackend.close();
+            artistBackend.close();
+            trackBackend.close();
+        }
+    }
+
+    private static SimulatedBackend backend(LatencyDistribution latency, int concurrencyLimit,
+            long seed) {
+        return new SimulatedBackend(latency, 0, concurrencyLimit, seed);
+    }
+
+    /**
+     * A rate at which requests would be less than a nanosecond apart cannot be scheduled.
+     */
+    @Test
+    void rejectsUnschedulableRates() {
+        assertAll(() -> assertThrows(IllegalArgumentException.class,
+                () -> new OpenLoopLoadGenerator(0, Duration.ofSeconds(1))),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new OpenLoopLoadGenerator(2e9, Duration.ofSeconds(1))),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> new OpenLoopLoadGenerator(Double.NaN, Duration.ofSeconds(1))));
+        new OpenLoopLoadGenerator(1e9, Duration.ofSeconds(1));
+    }
+
+    @Test
+    void lookupBelowCapacity() {
+        LatencyDistribution latency = LatencyDistribution.logNormal(Duration.ofMillis(5), 0.5);
+        try (SimulatedServices services = new SimulatedServices(backend(latency, 50, 1),
+                backend(latency, 50, 2), backend(latency, 50, 3))) {
+            CompletableFuturesDemo lookup = CompletableFuturesDemo.withServices(services);
+            OpenLoopLoadGenerator.Result result =
+                    new OpenLoopLoadGenerator(500, Duration.ofSeconds(1))
+                            .run(() -> lookup.lookupByNameAsync("The AA"));
+
+            System.out.println("Below capacity: " + result);
+            assertAll(() -> assertEquals(500, result.requestCount()),
+                    () -> assertEquals(0, result.errorCount()),
+                    () -> assertTrue(result.latency().valueAtPercentile(50) >= 10_000),
+                    () -> assertTrue(result.latency().valueAtPercentile(99) < 200_000));
+        }
+    }
+
+    /**
+     * The artist backend can serve 2 lookups every 10ms, i.e., 200 per second, so at 400 requests
+     * per second, the queue (and latency) grows for as long as the load lasts. Here the lookups
+     * queue in the lookup's concurrency limiter rather than in the backend.
+     */
+    @Test
+    void lookupOverCapacity() {
+        LatencyDistribution latency = LatencyDistribution.fixed(Duration.ofMillis(10));
+        try (SimulatedServices services = new SimulatedServices(backend(latency, 100, 1),
+                backend(latency, 2, 2), backend(latency, 100, 3))) {
+            CompletableFuturesDemo lookup = CompletableFuturesDemo.withServices(services);
+            OpenLoopLoadGenerator.Result result =
+                    new OpenLoopLoadGenerator(400, Duration.ofMillis(500))
+                            .run(() -> lookup.lookupByNameAsync("The AA"));
+
+            System.out.println("Over capacity: " + result);
+            assertTrue(result.latency().valueAtPercentile(99) > 250_000,
+                    () -> result.latency().toString());
+        }
+    }
+
+    /**
+     * With a blocking request, the generator cannot send while the request is stalled. Measured
+     * from when requests were actually sent, only the stalled request looks slow; measured from
+     * when they should have been sent, so do all the requests that were held up behind it.
+     */
+    @Test
+    void coordinatedOmissionCorrection() {
+        AtomicInteger requests = new AtomicInteger();
+        OpenLoopLoadGenerator.Result result =
+                new OpenLoopLoadGenerator(500, Duration.ofSeconds(1)).run(() -> {
+                    if (requests.incrementAndGet() == 100) {
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(200);
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    return CompletableFuture.completedFuture(null);
+                });
+
+        System.out.println("Blocking requests with a stall: " + result);
+        assertAll(() -> assertTrue(result.uncorrectedLatency().valueAtPercentile(99) < 10_000),
+                () -> assertTrue(result.latency().valueAtPercentile(90) > 50_000));
+    }
+}
@@ -0,0 +1,64 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Latency histograms for each stage of the album lookup pipeline.
+ * <p>
+ * An asynchronous stage is timed from when it is submitted until its future completes, so the
+ * time spent queuing for a thread is included - that is often where tail latency comes from.
+ */
+class LookupStageMetrics {
+
+    enum Stage {
+        LOGIN, LOOKUP_ARTISTS, LOOKUP_TRACKS, COMBINE
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    LookupStageMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    <T> CompletableFuture<T> timeAsync(Stage stage, Supplier<CompletableFuture<T>> task) {
+        LatencyHistogram histogram = histograms.get(stage);
+        long start = System.nanoTime();
+        return task.get().whenComplete(
+                (result, error) -> histogram.recordNanos(System.nanoTime() - start));
+    }
+
+    <T> T time(Stage stage, Supplier<T> task) {
+        long start = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            histograms.get(stage).recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    LatencyHistogram.Snapshot snapshot(Stage stage) {
+        return histograms.get(stage).snapshot();
+    }
+
+    Map<Stage, LatencyHistogram.Snapshot> snapshot() {
+        Map<Stage, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(Stage.class);
+        histograms.forEach((stage, histogram) -> snapshots.put(stage, histogram.snapshot()));
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * One line per stage, e.g., {@code LOGIN: count=2, mean=...}
+     */
+    String report() {
+        StringBuilder report = new StringBuilder();
+        snapshot().forEach((stage, snapshot) -> report.append(stage).append(": ")
+                .append(snapshot).append(System.lineSeparator()));
+        return report.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Sends requests at a fixed rate, whether or not earlier requests have completed, as independent
+ * users would.
+ * <p>
+ * A closed-loop generator (send, wait for the response, send the next) stops sending while the
+ * system under test stalls, so the requests that would have arrived during the stall are never
+ * measured - coordinated omission. Here each request's latency is instead measured from the time
+ * it was <em>scheduled</em> to be sent, so time that a request would have spent waiting behind a
+ * stall (or behind a late generator) is counted. Latency from the time it was actually sent is
+ * also kept, to show the difference.
+ */
+class OpenLoopLoadGenerator {
+
+    private final long intervalNanos;
+    private final Duration duration;
+
+    /**
+     * @param requestsPerSecond positive, and at most a billion, so that requests are at least a
+     *        nanosecond apart
+     */
+    OpenLoopLoadGenerator(double requestsPerSecond, Duration duration) {
+        intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        if (!(requestsPerSecond > 0) || intervalNanos < 1) {
+            throw new IllegalArgumentException("requestsPerSecond: " + requestsPerSecond);
+        }
+        this.duration = duration;
+    }
+
+    /**
+     * Sends requests from the calling thread until {@code duration} has passed, then waits for all
+     * of them to complete.
+     */
+    Result run(Supplier<? extends CompletableFuture<?>> request) {
+        long requestCount = duration.toNanos() / intervalNanos;
+
+        LatencyHistogram corrected = new LatencyHistogram();
+        LatencyHistogram uncorrected = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[(int) requestCount];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requestCount; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long now;
+            while ((now = System.nanoTime()) < intendedStart) {
+                LockSupport.parkNanos(intendedStart - now);
+            }
+
+            long actualStart = now;
+            CompletableFuture<?> response;
+            try {
+                response = request.get();
+            } catch (RuntimeException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            responses[i] = response.whenComplete((result, error) -> {
+                long end = System.nanoTime();
+                corrected.recordNanos(end - intendedStart);
+                uncorrected.recordNanos(end - actualStart);
+                if (error != null) {
+                    errors.increment();
+                }
+            });
+        }
+
+        CompletableFuture.allOf(responses).handle((result, error) -> null).join();
+        long elapsed = System.nanoTime() - start;
+        return new Result(requestCount, errors.sum(), elapsed, corrected.snapshot(),
+                uncorrected.snapshot());
+    }
+
+    static final class Result {
+        private final long requestCount;
+        private final long errorCount;
+        private final long elapsedNanos;
+        private final LatencyHistogram.Snapshot latency;
+        private final LatencyHistogram.Snapshot uncorrectedLatency;
+
+        Result(long requestCount, long errorCount, long elapsedNanos,
+                LatencyHistogram.Snapshot latency, LatencyHistogram.Snapshot uncorrectedLatency) {
+            this.requestCount = requestCount;
+            this.errorCount = errorCount;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+            this.uncorrectedLatency = uncorrectedLatency;
+        }
+
+        long requestCount() {
+            return requestCount;
+        }
+
+        long errorCount() {
+            return errorCount;
+        }
+
+        /**
+         * Completed requests per second, including the time taken to drain the last responses.
+         */
+        double throughput() {
+            return requestCount / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Latency measured from when each request was scheduled to be sent.
+         */
+        LatencyHistogram.Snapshot latency() {
+            return latency;
+        }
+
+        /**
+         * Latency measured from when each request was actually sent.
+         */
+        LatencyHistogram.Snapshot uncorrectedLatency() {
+            return uncorrectedLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d, errors=%d, throughput=%.0f/s%n  latency: %s%n"
+                    + "  uncorrected latency: %s", requestCount, errorCount, throughput(), latency,
+                    uncorrectedLatency);
+        }
+    }
+}
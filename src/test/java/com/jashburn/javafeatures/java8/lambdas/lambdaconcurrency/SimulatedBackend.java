@@ -0,0 +1,174 @@
+package com.jashburn.javafeatures.java8.lambdas.lambdaconcurrency;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in for a remote service such as the login, artist, and track services used by
+ * {@link CompletableFuturesDemo}, for trying out the lookup pipeline under realistic latencies and
+ * overload.
+ * <ul>
+ * <li>each call takes a time drawn from a {@link LatencyDistribution}, and fails with a
+ * {@link BackendException} with probability {@code errorRate}</li>
+ * <li>at most {@code concurrencyLimit} calls are served at once; the rest wait in a queue, as they
+ * would in a real server, so response times grow once the backend is saturated</li>
+ * <li>no thread is held for the duration of a call: the end of each call is scheduled on a single
+ * timer thread, which frees its slot for the next queued call and hands the completion to the
+ * common pool. Dependent stages of the caller therefore never run on the timer thread, where they
+ * would hold up other calls and skew their latencies</li>
+ * </ul>
+ */
+class SimulatedBackend implements AutoCloseable {
+
+    /**
+     * Service time of a single call, in microseconds.
+     */
+    @FunctionalInterface
+    interface LatencyDistribution {
+
+        long sampleMicros(SplittableRandom random);
+
+        static LatencyDistribution fixed(Duration latency) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(latency.toNanos());
+            return random -> micros;
+        }
+
+        static LatencyDistribution uniform(Duration min, Duration max) {
+            long minMicros = TimeUnit.NANOSECONDS.toMicros(min.toNanos());
+            long maxMicros = TimeUnit.NANOSECONDS.toMicros(max.toNanos());
+            return random -> random.nextLong(minMicros, maxMicros + 1);
+        }
+
+        static LatencyDistribution exponential(Duration mean) {
+            double meanMicros = TimeUnit.NANOSECONDS.toMicros(mean.toNanos());
+            return random -> (long) (-meanMicros * Math.log(1 - random.nextDouble()));
+        }
+
+        /**
+         * Long-tailed, as service times usually are: {@code sigma} of 0.5 puts the 99th percentile
+         * at about three times the median.
+         */
+        static LatencyDistribution logNormal(Duration median, double sigma) {
+            double mu = Math.log(TimeUnit.NANOSECONDS.toMicros(median.toNanos()));
+            return random -> (long) Math.exp(mu + sigma * nextGaussian(random));
+        }
+
+        private static double nextGaussian(SplittableRandom random) {
+            // Box-Muller transform
+            double u1 = 1 - random.nextDouble();
+            double u2 = random.nextDouble();
+            return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+        }
+    }
+
+    static class BackendException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BackendException(String message) {
+            super(message);
+        }
+    }
+
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final int concurrencyLimit;
+    private final SplittableRandom random;
+    private final ScheduledExecutorService timer;
+    private final Executor completions = ForkJoinPool.commonPool();
+
+    // Guarded by this
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int inService;
+
+    SimulatedBackend(LatencyDistribution latency, double errorRate, int concurrencyLimit,
+            long seed) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("errorRate: " + errorRate);
+        }
+        if (concurrencyLimit <= 0) {
+            throw new IllegalArgumentException("concurrencyLimit: " + concurrencyLimit);
+        }
+        this.latency = Objects.requireNonNull(latency);
+        this.errorRate = errorRate;
+        this.concurrencyLimit = concurrencyLimit;
+        this.random = new SplittableRandom(seed);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "simulated-backend");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param response produces the result of the call once it has been served
+     */
+    <T> CompletableFuture<T> call(Supplier<T> response) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable serve = () -> serve(response, result);
+
+        synchronized (this) {
+            if (inService == concurrencyLimit) {
+                waiting.add(serve);
+                return result;
+            }
+            inService++;
+        }
+        serve.run();
+        return result;
+    }
+
+    synchronized int queueLength() {
+        return waiting.size();
+    }
+
+    private <T> void serve(Supplier<T> response, CompletableFuture<T> result) {
+        long serviceMicros;
+        boolean fail;
+        synchronized (random) {
+            serviceMicros = latency.sampleMicros(random);
+            fail = random.nextDouble() < errorRate;
+        }
+
+        timer.schedule(() -> {
+            serveNext();
+            completions.execute(() -> {
+                try {
+                    if (fail) {
+                        result.completeExceptionally(new BackendException("simulated failure"));
+                    } else {
+                        result.complete(response.get());
+                    }
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        }, serviceMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void serveNext() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                inService--;
+                return;
+            }
+        }
+        next.run();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,87 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.util.stream.DoubleStream;
+
+/**
+ * Map of {@code int} keys to {@code double} values, without boxing: 12 bytes per slot, and so,
+ * with the table between 35% and 70% full, 17 to 34 bytes per entry, against around 60 for a
+ * {@code HashMap<Integer, Double>} entry with its two boxes.
+ * <p>
+ * Accumulating into the map with {@link #addTo(int, double)} plugs into a stream:
+ *
+ * <pre>
+ * IntDoubleMap probabilities = IntStream.range(0, rolls).collect(IntDoubleMap::new,
+ *         (map, i) -> map.addTo(rollDice(), 1.0 / rolls), IntDoubleMap::addAll);
+ * </pre>
+ */
+public class IntDoubleMap extends IntKeyTable<double[]> {
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, double value);
+    }
+
+    public IntDoubleMap() {
+        this(16);
+    }
+
+    public IntDoubleMap(int expectedSize) {
+        super(expectedSize, double[]::new);
+    }
+
+    public double get(int key, double defaultValue) {
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public void put(int key, double value) {
+        int slot = claimSlot(key);
+        values[slot] = value;
+    }
+
+    /**
+     * Adds {@code delta} to the value for {@code key}, which starts at 0 if the key is new.
+     *
+     * @return the new value
+     */
+    public double addTo(int key, double delta) {
+        int slot = claimSlot(key);
+        return values[slot] += delta;
+    }
+
+    /**
+     * Adds each of {@code other}'s values to this map's value for the same key.
+     */
+    public void addAll(IntDoubleMap other) {
+        other.forEach(this::addTo);
+    }
+
+    public double remove(int key, double defaultValue) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return defaultValue;
+        }
+        double value = values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    public DoubleStream values() {
+        double[] table = values;
+        return slots().mapToDouble(slot -> table[slot]);
+    }
+
+    public void forEach(EntryConsumer action) {
+        slots().forEach(slot -> action.accept(keyAt(slot), values[slot]));
+    }
+
+    @Override
+    void copyValue(double[] from, int fromSlot, int toSlot) {
+        values[toSlot] = from[fromSlot];
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = 0;
+    }
+}
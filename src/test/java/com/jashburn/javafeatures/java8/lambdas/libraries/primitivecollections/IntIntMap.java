@@ -0,0 +1,87 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.util.stream.IntStream;
+
+/**
+ * Map of {@code int} keys to {@code int} values, without boxing: 8 bytes per slot, and so, with
+ * the table between 35% and 70% full, 11 to 23 bytes per entry, against around 60 for a
+ * {@code HashMap<Integer, Integer>} entry with its two boxes.
+ * <p>
+ * Counting into the map with {@link #addTo(int, int)} plugs into an {@link IntStream}:
+ *
+ * <pre>
+ * IntIntMap counts = intStream.collect(IntIntMap::new, (map, i) -> map.addTo(i, 1),
+ *         IntIntMap::addAll);
+ * </pre>
+ */
+public class IntIntMap extends IntKeyTable<int[]> {
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int expectedSize) {
+        super(expectedSize, int[]::new);
+    }
+
+    public int get(int key, int defaultValue) {
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public void put(int key, int value) {
+        int slot = claimSlot(key);
+        values[slot] = value;
+    }
+
+    /**
+     * Adds {@code delta} to the value for {@code key}, which starts at 0 if the key is new.
+     *
+     * @return the new value
+     */
+    public int addTo(int key, int delta) {
+        int slot = claimSlot(key);
+        return values[slot] += delta;
+    }
+
+    /**
+     * Adds each of {@code other}'s values to this map's value for the same key.
+     */
+    public void addAll(IntIntMap other) {
+        other.forEach(this::addTo);
+    }
+
+    public int remove(int key, int defaultValue) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return defaultValue;
+        }
+        int value = values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    public IntStream values() {
+        int[] table = values;
+        return slots().map(slot -> table[slot]);
+    }
+
+    public void forEach(EntryConsumer action) {
+        slots().forEach(slot -> action.accept(keyAt(slot), values[slot]));
+    }
+
+    @Override
+    void copyValue(int[] from, int fromSlot, int toSlot) {
+        values[toSlot] = from[fromSlot];
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = 0;
+    }
+}
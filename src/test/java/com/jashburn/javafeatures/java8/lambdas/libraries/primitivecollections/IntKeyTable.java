@@ -0,0 +1,137 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * {@link ProbingTable} of {@code int} keys, shared by the {@code int}-keyed maps, which add their
+ * values array.
+ * <p>
+ * An empty slot holds key 0, so key 0 itself is kept outside the table, in the extra slot
+ * {@code keys.length} (value arrays are one longer than the key array).
+ *
+ * @param <V> the type of the value array
+ */
+abstract class IntKeyTable<V> extends ProbingTable<int[], V> {
+
+    private boolean hasZeroKey;
+
+    IntKeyTable(int expectedSize, IntFunction<V> newValues) {
+        super(expectedSize, 1, int[]::new, newValues);
+    }
+
+    public boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Keys in table order.
+     */
+    public IntStream keys() {
+        return slots().map(this::keyAt);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        hasZeroKey = false;
+    }
+
+    @Override
+    IntStream slots() {
+        IntStream slots = super.slots();
+        return hasZeroKey ? IntStream.concat(slots, IntStream.of(capacity())) : slots;
+    }
+
+    int keyAt(int slot) {
+        return slot == capacity() ? 0 : keys[slot];
+    }
+
+    /**
+     * @return the slot holding {@code key}, or -1 if it is not in the table
+     */
+    int slotOf(int key) {
+        if (key == 0) {
+            return hasZeroKey ? capacity() : -1;
+        }
+        int slot = mix(key) & mask;
+        while (true) {
+            int current = keys[slot];
+            if (current == key) {
+                return slot;
+            }
+            if (current == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the slot holding {@code key}, adding it (with a value of 0) if it is not there
+     */
+    int claimSlot(int key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return capacity();
+        }
+        int slot = mix(key) & mask;
+        while (true) {
+            int current = keys[slot];
+            if (current == key) {
+                return slot;
+            }
+            if (current == 0) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (isFull()) {
+            resize();
+            return claimSlot(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    @Override
+    void removeSlot(int slot) {
+        if (slot == capacity()) {
+            size--;
+            hasZeroKey = false;
+            clearValue(slot);
+            return;
+        }
+        super.removeSlot(slot);
+    }
+
+    @Override
+    boolean isFree(int[] keys, int slot) {
+        return keys[slot] == 0;
+    }
+
+    @Override
+    int hashAt(int[] keys, int slot) {
+        return mix(keys[slot]);
+    }
+
+    @Override
+    void copyKey(int[] from, int fromSlot, int toSlot) {
+        keys[toSlot] = from[fromSlot];
+    }
+
+    @Override
+    void clearKey(int slot) {
+        keys[slot] = 0;
+    }
+
+    @Override
+    Object boxedKeyAt(int slot) {
+        return keyAt(slot);
+    }
+}
@@ -0,0 +1,92 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+
+/**
+ * Growable list of {@code int}s, backed by an {@code int[]}: 4 bytes per element, against 16 for
+ * the {@code Integer} and 4 or 8 for the reference in a {@code List<Integer>}.
+ * <p>
+ * {@link #stream()} is backed directly by the array, so it splits evenly for parallel streams. To
+ * collect an {@link IntStream} into a list:
+ *
+ * <pre>
+ * IntList list = intStream.collect(IntList::new, IntList::add, IntList::addAll);
+ * </pre>
+ */
+public class IntList extends PrimitiveList<int[]> {
+
+    public IntList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntList(int initialCapacity) {
+        super(initialCapacity, int[]::new);
+    }
+
+    public static IntList of(int... values) {
+        IntList list = new IntList(values.length);
+        list.addAll(values);
+        return list;
+    }
+
+    public void add(int value) {
+        int index = claimNext();
+        elements[index] = value;
+    }
+
+    public void addAll(int... values) {
+        append(values, values.length);
+    }
+
+    public void addAll(IntList other) {
+        append(other.elements, other.size);
+    }
+
+    public int get(int index) {
+        return elements[checkIndex(index)];
+    }
+
+    public int set(int index, int value) {
+        int previous = elements[checkIndex(index)];
+        elements[index] = value;
+        return previous;
+    }
+
+    public int[] toArray() {
+        return copyElements();
+    }
+
+    public IntStream stream() {
+        return Arrays.stream(elements, 0, size);
+    }
+
+    public Spliterator.OfInt spliterator() {
+        return Arrays.spliterator(elements, 0, size);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof IntList))
+            return false;
+        IntList other = (IntList) obj;
+        return Arrays.equals(elements, 0, size, other.elements, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + elements[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,87 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.util.stream.LongStream;
+
+/**
+ * Map of {@code int} keys to {@code long} values, without boxing: 12 bytes per slot, and so, with
+ * the table between 35% and 70% full, 17 to 34 bytes per entry, against around 60 for a
+ * {@code HashMap<Integer, Long>} entry with its two boxes.
+ * <p>
+ * Accumulating into the map with {@link #addTo(int, long)} plugs into a stream:
+ *
+ * <pre>
+ * IntLongMap totals = trackStream.collect(IntLongMap::new,
+ *         (map, track) -> map.addTo(track.getLength(), 1), IntLongMap::addAll);
+ * </pre>
+ */
+public class IntLongMap extends IntKeyTable<long[]> {
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+
+    public IntLongMap() {
+        this(16);
+    }
+
+    public IntLongMap(int expectedSize) {
+        super(expectedSize, long[]::new);
+    }
+
+    public long get(int key, long defaultValue) {
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public void put(int key, long value) {
+        int slot = claimSlot(key);
+        values[slot] = value;
+    }
+
+    /**
+     * Adds {@code delta} to the value for {@code key}, which starts at 0 if the key is new.
+     *
+     * @return the new value
+     */
+    public long addTo(int key, long delta) {
+        int slot = claimSlot(key);
+        return values[slot] += delta;
+    }
+
+    /**
+     * Adds each of {@code other}'s values to this map's value for the same key.
+     */
+    public void addAll(IntLongMap other) {
+        other.forEach(this::addTo);
+    }
+
+    public long remove(int key, long defaultValue) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return defaultValue;
+        }
+        long value = values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    public LongStream values() {
+        long[] table = values;
+        return slots().mapToLong(slot -> table[slot]);
+    }
+
+    public void forEach(EntryConsumer action) {
+        slots().forEach(slot -> action.accept(keyAt(slot), values[slot]));
+    }
+
+    @Override
+    void copyValue(long[] from, int fromSlot, int toSlot) {
+        values[toSlot] = from[fromSlot];
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = 0;
+    }
+}
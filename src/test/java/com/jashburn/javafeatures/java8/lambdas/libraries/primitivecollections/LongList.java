@@ -0,0 +1,92 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.stream.LongStream;
+
+/**
+ * Growable list of {@code long}s, backed by a {@code long[]}: 8 bytes per element, against 16 for
+ * the {@code Long} and 4 or 8 for the reference in a {@code List<Long>}.
+ * <p>
+ * {@link #stream()} is backed directly by the array, so it splits evenly for parallel streams. To
+ * collect a {@link LongStream} into a list:
+ *
+ * <pre>
+ * LongList list = longStream.collect(LongList::new, LongList::add, LongList::addAll);
+ * </pre>
+ */
+public class LongList extends PrimitiveList<long[]> {
+
+    public LongList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongList(int initialCapacity) {
+        super(initialCapacity, long[]::new);
+    }
+
+    public static LongList of(long... values) {
+        LongList list = new LongList(values.length);
+        list.addAll(values);
+        return list;
+    }
+
+    public void add(long value) {
+        int index = claimNext();
+        elements[index] = value;
+    }
+
+    public void addAll(long... values) {
+        append(values, values.length);
+    }
+
+    public void addAll(LongList other) {
+        append(other.elements, other.size);
+    }
+
+    public long get(int index) {
+        return elements[checkIndex(index)];
+    }
+
+    public long set(int index, long value) {
+        long previous = elements[checkIndex(index)];
+        elements[index] = value;
+        return previous;
+    }
+
+    public long[] toArray() {
+        return copyElements();
+    }
+
+    public LongStream stream() {
+        return Arrays.stream(elements, 0, size);
+    }
+
+    public Spliterator.OfLong spliterator() {
+        return Arrays.spliterator(elements, 0, size);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof LongList))
+            return false;
+        LongList other = (LongList) obj;
+        return Arrays.equals(elements, 0, size, other.elements, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + Long.hashCode(elements[i]);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,173 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Map of object keys to {@code long} values, such as a {@code Map<Artist, Long>} of counts, with
+ * open addressing and linear probing ({@link ProbingTable}). Values are kept in a {@code long[]}
+ * next to the key array, so there is neither an entry object nor a {@code Long} per key.
+ * {@code null} keys are not allowed.
+ */
+public class ObjectLongMap<K> extends ProbingTable<Object[], long[]> {
+
+    public ObjectLongMap() {
+        this(16);
+    }
+
+    public ObjectLongMap(int expectedSize) {
+        super(expectedSize, 0, Object[]::new, long[]::new);
+    }
+
+    /**
+     * Counts the elements of a stream by key, like {@code groupingBy(classifier, counting())}.
+     */
+    public static <T, K> Collector<T, ?, ObjectLongMap<K>> counting(
+            Function<? super T, ? extends K> classifier) {
+        return summing(classifier, element -> 1);
+    }
+
+    /**
+     * Sums a {@code long} property of the elements of a stream by key, like
+     * {@code groupingBy(classifier, summingLong(mapper))}.
+     */
+    public static <T, K> Collector<T, ?, ObjectLongMap<K>> summing(
+            Function<? super T, ? extends K> classifier, ToLongFunction<? super T> mapper) {
+        return Collector.of(ObjectLongMap<K>::new,
+                (map, element) -> map.addTo(classifier.apply(element), mapper.applyAsLong(element)),
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+    }
+
+    public boolean containsKey(K key) {
+        return slotOf(key) >= 0;
+    }
+
+    public long get(K key, long defaultValue) {
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public void put(K key, long value) {
+        int slot = claimSlot(key);
+        values[slot] = value;
+    }
+
+    /**
+     * Adds {@code delta} to the value for {@code key}, which starts at 0 if the key is new.
+     *
+     * @return the new value
+     */
+    public long addTo(K key, long delta) {
+        int slot = claimSlot(key);
+        return values[slot] += delta;
+    }
+
+    public void addAll(ObjectLongMap<? extends K> other) {
+        other.forEach(this::addTo);
+    }
+
+    public long remove(K key, long defaultValue) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return defaultValue;
+        }
+        long value = values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Stream<K> keys() {
+        Object[] table = keys;
+        return slots().mapToObj(slot -> (K) table[slot]);
+    }
+
+    public LongStream values() {
+        long[] table = values;
+        return slots().mapToLong(slot -> table[slot]);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<? super K> action) {
+        Object[] table = keys;
+        for (int slot = 0; slot < table.length; slot++) {
+            if (table[slot] != null) {
+                action.accept((K) table[slot], values[slot]);
+            }
+        }
+    }
+
+    @Override
+    boolean isFree(Object[] keys, int slot) {
+        return keys[slot] == null;
+    }
+
+    @Override
+    int hashAt(Object[] keys, int slot) {
+        return mix(keys[slot].hashCode());
+    }
+
+    @Override
+    void copyKey(Object[] from, int fromSlot, int toSlot) {
+        keys[toSlot] = from[fromSlot];
+    }
+
+    @Override
+    void clearKey(int slot) {
+        keys[slot] = null;
+    }
+
+    @Override
+    void copyValue(long[] from, int fromSlot, int toSlot) {
+        values[toSlot] = from[fromSlot];
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = 0;
+    }
+
+    private int slotOf(Object key) {
+        int slot = mix(Objects.requireNonNull(key).hashCode()) & mask;
+        while (true) {
+            Object current = keys[slot];
+            if (current == null) {
+                return -1;
+            }
+            if (current.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int claimSlot(Object key) {
+        int slot = mix(Objects.requireNonNull(key).hashCode()) & mask;
+        while (true) {
+            Object current = keys[slot];
+            if (current == null) {
+                break;
+            }
+            if (current.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (isFull()) {
+            resize();
+            return claimSlot(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+}
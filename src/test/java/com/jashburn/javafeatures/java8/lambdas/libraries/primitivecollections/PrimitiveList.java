@@ -0,0 +1,81 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Growable array of primitives, shared by {@link IntList} and {@link LongList}, which add the
+ * methods that depend on the element type, and write single elements with a plain assignment on
+ * the typed array. Runs of elements are copied, whatever their type, with
+ * {@code System.arraycopy}; the array grows by half when full. Its length is kept in
+ * {@code capacity}, rather than read reflectively on every add.
+ *
+ * @param <A> the type of the element array
+ */
+abstract class PrimitiveList<A> {
+
+    static final int DEFAULT_CAPACITY = 10;
+
+    private final IntFunction<A> newArray;
+
+    A elements;
+    int size;
+    private int capacity;
+
+    PrimitiveList(int initialCapacity, IntFunction<A> newArray) {
+        this.newArray = newArray;
+        elements = newArray.apply(initialCapacity);
+        capacity = initialCapacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the index of the next element, once there is room for it
+     */
+    int claimNext() {
+        if (size == capacity) {
+            grow(size + 1);
+        }
+        return size++;
+    }
+
+    /**
+     * Appends the first {@code length} elements of {@code values}.
+     */
+    void append(A values, int length) {
+        if (size + length > capacity) {
+            grow(size + length);
+        }
+        System.arraycopy(values, 0, elements, size, length);
+        size += length;
+    }
+
+    int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+
+    A copyElements() {
+        A copy = newArray.apply(size);
+        System.arraycopy(elements, 0, copy, 0, size);
+        return copy;
+    }
+
+    private void grow(int minCapacity) {
+        int grownCapacity = Math.max(minCapacity, capacity + (capacity >> 1) + 1);
+        A grown = newArray.apply(grownCapacity);
+        System.arraycopy(elements, 0, grown, 0, size);
+        elements = grown;
+        capacity = grownCapacity;
+    }
+}
@@ -0,0 +1,181 @@
+package com.jashburn.javafeatures.java8.lambdas.libraries.primitivecollections;
+
+import java.lang.reflect.Array;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Open-addressing hash table with linear probing, shared by the primitive maps. Keys and values
+ * are kept in parallel arrays indexed by slot, of whatever types the map needs ({@code int[]},
+ * {@code Object[]}, {@code long[]}, ...), so subclasses only add what depends on those types:
+ * <ul>
+ * <li>a key subclass ({@link IntKeyTable}, {@link ObjectLongMap}) tells free slots from taken ones,
+ * hashes the key in a slot, looks keys up, and copies and clears keys</li>
+ * <li>a map reads and writes its values at the slots found, and copies and clears values</li>
+ * </ul>
+ * The table doubles when it is {@link #LOAD_FACTOR} full. Removal shifts later entries of the same
+ * probe sequence back, instead of leaving tombstones. Entries are moved between slots by the
+ * subclasses, with a plain assignment on the typed arrays.
+ * <p>
+ * Since the table is kept between 35% and 70% full, an entry takes 1.4 to 2.9 slots: for a million
+ * {@code int}-to-{@code long} entries, about 25 bytes each against 81 for a
+ * {@code HashMap<Integer, Long>} (see {@code PrimitiveCollectionsDemo}), a reduction of 3.2 times
+ * rather than 4.
+ * <p>
+ * Value arrays may be longer than the key array by {@code extraSlots}, for entries kept outside
+ * the table, such as a key that cannot be told from a free slot.
+ *
+ * @param <K> the type of the key array
+ * @param <V> the type of the value array
+ */
+abstract class ProbingTable<K, V> {
+
+    private static final float LOAD_FACTOR = 0.7f;
+    private static final int MIN_CAPACITY = 8;
+
+    private final int extraSlots;
+    private final IntFunction<K> newKeys;
+    private final IntFunction<V> newValues;
+
+    K keys;
+    V values;
+    int mask;
+    int size;
+    private int resizeAt;
+
+    ProbingTable(int expectedSize, int extraSlots, IntFunction<K> newKeys,
+            IntFunction<V> newValues) {
+        this.extraSlots = extraSlots;
+        this.newKeys = newKeys;
+        this.newValues = newValues;
+        allocate(tableSizeFor((int) Math.ceil(expectedSize / LOAD_FACTOR)));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        allocate(capacity());
+        size = 0;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    abstract boolean isFree(K keys, int slot);
+
+    /**
+     * @return the hash of the key in {@code slot}, before masking
+     */
+    abstract int hashAt(K keys, int slot);
+
+    /**
+     * Copies the key in {@code from[fromSlot]} to slot {@code toSlot} of {@link #keys}.
+     */
+    abstract void copyKey(K from, int fromSlot, int toSlot);
+
+    abstract void clearKey(int slot);
+
+    /**
+     * Copies the value in {@code from[fromSlot]} to slot {@code toSlot} of {@link #values}.
+     */
+    abstract void copyValue(V from, int fromSlot, int toSlot);
+
+    abstract void clearValue(int slot);
+
+    /**
+     * Slots holding a key. Splits evenly across the table, so parallel streams work well.
+     */
+    IntStream slots() {
+        K table = keys;
+        return IntStream.range(0, capacity()).filter(slot -> !isFree(table, slot));
+    }
+
+    boolean isFull() {
+        return size >= resizeAt;
+    }
+
+    void removeSlot(int slot) {
+        size--;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (!isFree(keys, next)) {
+            int home = hashAt(keys, next) & mask;
+            // Move the entry back if the gap lies on its probe sequence (between home and next)
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                copyKey(keys, next, gap);
+                copyValue(values, next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        clearKey(gap);
+        clearValue(gap);
+    }
+
+    void resize() {
+        K oldKeys = keys;
+        V oldValues = values;
+        int oldCapacity = capacity();
+        allocate(oldCapacity * 2);
+
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            if (!isFree(oldKeys, oldSlot)) {
+                int slot = hashAt(oldKeys, oldSlot) & mask;
+                while (!isFree(keys, slot)) {
+                    slot = (slot + 1) & mask;
+                }
+                copyKey(oldKeys, oldSlot, slot);
+                copyValue(oldValues, oldSlot, slot);
+            }
+        }
+        for (int extra = 0; extra < extraSlots; extra++) {
+            copyValue(oldValues, oldCapacity + extra, capacity() + extra);
+        }
+    }
+
+    /**
+     * @return the key in {@code slot}, for {@link #toString()}
+     */
+    Object boxedKeyAt(int slot) {
+        return Array.get(keys, slot);
+    }
+
+    static int mix(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+
+    private void allocate(int capacity) {
+        keys = newKeys.apply(capacity);
+        values = newValues.apply(capacity + extraSlots);
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, minCapacity) - 1) << 1;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("too large: " + minCapacity);
+        }
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        slots().forEach(slot -> {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(boxedKeyAt(slot)).append('=').append(Array.get(values, slot));
+        });
+        return builder.append('}').toString();
+    }
+}